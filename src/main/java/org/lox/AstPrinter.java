@@ -1,10 +1,21 @@
 package org.lox;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
 import org.lox.Expr.Assign;
 import org.lox.Expr.Variable;
 import org.lox.Token.TokenType;
 
-public class AstPrinter implements Expr.Visitor<String> {
+/**
+ * Prints trees in a Lisp-like form straight into an Appendable, in one pass,
+ * so the time and memory taken stay linear in the size of the output
+ * however deep the tree is. IOExceptions from the Appendable are rethrown
+ * as UncheckedIOException.
+ */
+public class AstPrinter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+  private final Appendable out;
 
   public static void main(String[] args) {
     Expr expressiong = new Expr.Binary(
@@ -17,60 +28,151 @@ public class AstPrinter implements Expr.Visitor<String> {
     System.out.println(new AstPrinter().print(expressiong));
   }
 
+  /**
+   * Prints to standard output.
+   */
+  AstPrinter() {
+    this(System.out);
+  }
+
+  AstPrinter(Appendable out) {
+    this.out = out;
+  }
+
+  /**
+   * Returns expr printed to a string, whatever this printer writes to.
+   */
   String print(Expr expr) {
-    return expr.accept(this);
+    StringBuilder builder = new StringBuilder();
+    new AstPrinter(builder).write(expr);
+    return builder.toString();
+  }
+
+  void write(Expr expr) {
+    expr.accept(this);
+  }
+
+  void write(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  // One statement per line.
+  void write(List<Stmt> statements) {
+    for (Stmt stmt : statements) {
+      stmt.accept(this);
+      append("\n");
+    }
   }
 
   @Override
-  public String visitBinaryExpr(Expr.Binary expr) {
+  public Void visitBinaryExpr(Expr.Binary expr) {
     return parenthesize(expr.operator.lexeme, expr.left, expr.right);
   }
 
   @Override
-  public String visitTernaryExpr(Expr.Ternary expr) {
-    return "(" + expr.first.accept(this) + ") " + expr.operator1.lexeme + " (" + expr.second.accept(this) + ") "
-        + expr.operator2.lexeme + " (" + expr.last.accept(this) + ")";
+  public Void visitTernaryExpr(Expr.Ternary expr) {
+    append("(");
+    expr.first.accept(this);
+    append(") ").append(expr.operator1.lexeme).append(" (");
+    expr.second.accept(this);
+    append(") ").append(expr.operator2.lexeme).append(" (");
+    expr.last.accept(this);
+    append(")");
+    return null;
   }
 
   @Override
-  public String visitGroupingExpr(Expr.Grouping expr) {
+  public Void visitGroupingExpr(Expr.Grouping expr) {
     return parenthesize("group", expr.expression);
   }
 
   @Override
-  public String visitLiteralExpr(Expr.Literal expr) {
-    if (expr.value == null)
-      return "nil";
-    return expr.value.toString();
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    append(expr.value == null ? "nil" : expr.value.toString());
+    return null;
   }
 
   @Override
-  public String visitUnaryExpr(Expr.Unary expr) {
+  public Void visitUnaryExpr(Expr.Unary expr) {
     return parenthesize(expr.operator.lexeme, expr.right);
   }
 
   @Override
-  public String visitVariableExpr(Variable expr) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'visitVariableExpr'");
+  public Void visitVariableExpr(Variable expr) {
+    append(expr.name.lexeme);
+    return null;
   }
 
-  private String parenthesize(String name, Expr... exprs) {
-    StringBuilder builder = new StringBuilder();
+  @Override
+  public Void visitAssignExpr(Assign expr) {
+    append("(= ").append(expr.name.lexeme).append(" ");
+    expr.value.accept(this);
+    append(")");
+    return null;
+  }
 
-    builder.append("(").append(name);
-    for (Expr expr : exprs) {
-      builder.append(" ");
-      builder.append(expr.accept(this));
+  @Override
+  public Void visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    append("(").append(expr.operator.lexeme).append(" ").append(expr.left.lexeme)
+        .append(" ").append(expr.right.lexeme).append(")");
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    append("(").append(expr.operator.lexeme).append(" ").append(expr.left.lexeme)
+        .append(" ").append(expr.value == null ? "nil" : expr.value.toString()).append(")");
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    append("(block");
+    for (Stmt statement : stmt.statements) {
+      append(" ");
+      statement.accept(this);
     }
-    builder.append(")");
+    append(")");
+    return null;
+  }
 
-    return builder.toString();
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    return parenthesize(";", stmt.expression);
   }
 
   @Override
-  public String visitAssignExpr(Assign expr) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'visitAssignExpr'");
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    return parenthesize("print", stmt.expression);
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    append("(var ").append(stmt.name.lexeme);
+    if (stmt.initializer != null) {
+      append(" = ");
+      stmt.initializer.accept(this);
+    }
+    append(")");
+    return null;
+  }
+
+  private Void parenthesize(String name, Expr... exprs) {
+    append("(").append(name);
+    for (Expr expr : exprs) {
+      append(" ");
+      expr.accept(this);
+    }
+    append(")");
+    return null;
+  }
+
+  private AstPrinter append(String text) {
+    try {
+      out.append(text);
+      return this;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 }
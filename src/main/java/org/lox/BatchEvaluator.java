@@ -0,0 +1,639 @@
+package org.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.lox.Token.TokenType;
+
+/**
+ * Runs one script once for every row of a batch of inputs, the way a fresh
+ * Interpreter run per row with the inputs defined as globals would, but in a
+ * single pass over the tree for every CHUNK rows. Each node is evaluated for
+ * all rows of the chunk at once into a column, so dispatch is paid once per
+ * chunk instead of once per row.
+ *
+ * Columns of numbers and booleans are primitive arrays, and operators on
+ * them are plain loops over the whole chunk that the JIT vectorizes; other
+ * values are boxed and handled row by row. A selection vector holds the rows
+ * a node runs for: a ternary splits it between its branches, and a row that
+ * raises a RuntimeError is dropped from it, so its error, output and globals
+ * stay exactly as the row's own run would have left them.
+ *
+ * As with interpret() outside the REPL, expression statements print
+ * nothing. No Budget applies. An evaluator keeps the state of the chunk it
+ * is on, so each thread needs one of its own.
+ */
+public class BatchEvaluator implements Expr.Visitor<BatchEvaluator.Column>, Stmt.Visitor<Void> {
+  // Rows evaluated together, few enough for their columns to stay in cache.
+  private static final int CHUNK = 1024;
+
+  /**
+   * What every row printed, the error it stopped at, and the values its
+   * globals ended up with.
+   */
+  public static final class Result {
+    private final String[] output;
+    private final RuntimeError[] errors;
+    private final List<Map<Integer, Column>> globals;
+
+    private Result(int rows) {
+      this.output = new String[rows];
+      this.errors = new RuntimeError[rows];
+      this.globals = new ArrayList<>();
+    }
+
+    public String output(int row) {
+      return output[row];
+    }
+
+    /**
+     * The error row stopped at, or null if it ran to the end.
+     */
+    public RuntimeError error(int row) {
+      return errors[row];
+    }
+
+    /**
+     * The value of global name at the end of row, or null if it is not
+     * defined or the row failed.
+     */
+    public Object value(String name, int row) {
+      if (errors[row] != null)
+        return null;
+      Column column = globals.get(row / CHUNK).get(SymbolTable.intern(name));
+      return column == null ? null : column.get(row % CHUNK);
+    }
+  }
+
+  /**
+   * The values of an expression for the rows of a chunk. Only the rows it
+   * was evaluated for hold anything meaningful. Columns are never written
+   * once built, so variables and expressions can share them.
+   */
+  static final class Column {
+    // Exactly one of these is set.
+    final double[] numbers;
+    final boolean[] bools;
+    final Object[] values;
+
+    private Column(double[] numbers, boolean[] bools, Object[] values) {
+      this.numbers = numbers;
+      this.bools = bools;
+      this.values = values;
+    }
+
+    static Column of(double[] numbers) {
+      return new Column(numbers, null, null);
+    }
+
+    static Column of(boolean[] bools) {
+      return new Column(null, bools, null);
+    }
+
+    static Column of(Object[] values) {
+      return new Column(null, null, values);
+    }
+
+    Object get(int row) {
+      if (numbers != null)
+        return numbers[row];
+      if (bools != null)
+        return bools[row];
+      return values[row];
+    }
+  }
+
+  // Rows of the chunk, in order. Dense while they are all of them.
+  private static final class Selection {
+    final int[] rows;
+    int count;
+    boolean dense;
+    // Failures counted when the failed rows were last dropped.
+    int seen;
+
+    Selection(int[] rows, int count, boolean dense, int seen) {
+      this.rows = rows;
+      this.count = count;
+      this.dense = dense;
+      this.seen = seen;
+    }
+  }
+
+  private final List<Stmt> statements;
+
+  // State of the chunk being evaluated.
+  private int size;
+  private Selection selection;
+  private RuntimeError[] errors;
+  private StringBuilder[] output;
+  private int failures;
+  private final Deque<Map<Integer, Column>> scopes = new ArrayDeque<>();
+
+  BatchEvaluator(List<Stmt> statements) {
+    this.statements = statements;
+  }
+
+  /**
+   * Compiles source, a whole script, for evaluate().
+   *
+   * @throws IllegalArgumentException listing the syntax errors, if any
+   */
+  public static BatchEvaluator compile(String source) {
+    Diagnostics diagnostics = new Diagnostics();
+    List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+    List<Stmt> statements = diagnostics.hadError() ? null : new Parser(tokens, diagnostics).parse();
+    if (diagnostics.hadError()) {
+      throw new IllegalArgumentException(diagnostics.all().stream()
+          .map(DiagnosticReporter::format)
+          .collect(Collectors.joining("\n")));
+    }
+    return new BatchEvaluator(statements);
+  }
+
+  /**
+   * Runs the script for rows rows, with globals defined from the first rows
+   * entries of the given columns. A null string defines the global as nil.
+   *
+   * @throws IllegalArgumentException if a column has fewer than rows entries
+   */
+  public Result evaluate(int rows, Map<String, double[]> numbers, Map<String, String[]> strings) {
+    for (double[] column : numbers.values()) {
+      if (column.length < rows)
+        throw new IllegalArgumentException("Input column shorter than " + rows + " rows.");
+    }
+    for (String[] column : strings.values()) {
+      if (column.length < rows)
+        throw new IllegalArgumentException("Input column shorter than " + rows + " rows.");
+    }
+
+    Result result = new Result(rows);
+    for (int start = 0; start < rows; start += CHUNK) {
+      int end = Math.min(rows, start + CHUNK);
+      Map<Integer, Column> globals = new HashMap<>();
+      for (Map.Entry<String, double[]> input : numbers.entrySet()) {
+        globals.put(SymbolTable.intern(input.getKey()),
+            Column.of(Arrays.copyOfRange(input.getValue(), start, end)));
+      }
+      for (Map.Entry<String, String[]> input : strings.entrySet()) {
+        globals.put(SymbolTable.intern(input.getKey()),
+            Column.of(Arrays.copyOfRange(input.getValue(), start, end, Object[].class)));
+      }
+
+      run(end - start, globals);
+      for (int row = 0; row < size; row++) {
+        result.output[start + row] = output[row] == null ? "" : output[row].toString();
+        result.errors[start + row] = errors[row];
+      }
+      result.globals.add(globals);
+    }
+    return result;
+  }
+
+  private void run(int size, Map<Integer, Column> globals) {
+    this.size = size;
+    int[] rows = new int[size];
+    for (int row = 0; row < size; row++) {
+      rows[row] = row;
+    }
+    selection = new Selection(rows, size, true, 0);
+    errors = new RuntimeError[size];
+    output = new StringBuilder[size];
+    failures = 0;
+    scopes.clear();
+    scopes.push(globals);
+
+    for (Stmt stmt : statements) {
+      if (selection.count == 0)
+        break;
+      execute(stmt);
+    }
+  }
+
+  private Column evaluate(Expr expr) {
+    Column column = expr.accept(this);
+    drop(selection);
+    return column;
+  }
+
+  private void execute(Stmt stmt) {
+    stmt.accept(this);
+    drop(selection);
+  }
+
+  // Evaluates expr for the rows of branch only.
+  private Column evaluate(Expr expr, Selection branch) {
+    Selection outer = selection;
+    selection = branch;
+    try {
+      return evaluate(expr);
+    } finally {
+      selection = outer;
+    }
+  }
+
+  private void fail(int row, RuntimeError error) {
+    errors[row] = error;
+    failures++;
+  }
+
+  private void failAll(RuntimeError error) {
+    for (int k = 0; k < selection.count; k++) {
+      fail(selection.rows[k], error);
+    }
+  }
+
+  // Removes the rows that failed since the last call from selection.
+  private void drop(Selection selection) {
+    if (selection.seen == failures)
+      return;
+    int[] rows = selection.rows;
+    int kept = 0;
+    for (int k = 0; k < selection.count; k++) {
+      if (errors[rows[k]] == null)
+        rows[kept++] = rows[k];
+    }
+    selection.dense &= kept == selection.count;
+    selection.count = kept;
+    selection.seen = failures;
+  }
+
+  private Map<Integer, Column> scopeOf(int symbol) {
+    for (Map<Integer, Column> scope : scopes) {
+      if (scope.containsKey(symbol))
+        return scope;
+    }
+    return null;
+  }
+
+  // Rows for which name is undefined or nil fail and are dropped.
+  private Column read(Token name) {
+    Map<Integer, Column> scope = scopeOf(name.symbol);
+    if (scope == null) {
+      failAll(new RuntimeError(name, "Undefined variable '" + name.lexeme + "'."));
+      drop(selection);
+      return Column.of(new Object[size]);
+    }
+    Column column = scope.get(name.symbol);
+    if (column.values != null) {
+      RuntimeError error = null;
+      for (int k = 0; k < selection.count; k++) {
+        int row = selection.rows[k];
+        if (column.values[row] == null) {
+          if (error == null)
+            error = new RuntimeError(name,
+                "Variable '" + name.lexeme + "' cannot be accessed before initialization.");
+          fail(row, error);
+        }
+      }
+      drop(selection);
+    }
+    return column;
+  }
+
+  private void assign(Token name, Column value) {
+    Map<Integer, Column> scope = scopeOf(name.symbol);
+    if (scope == null) {
+      failAll(new RuntimeError(name, "Undefined variable '" + name.lexeme + "'."));
+      return;
+    }
+    scope.put(name.symbol, merge(scope.get(name.symbol), value, selection));
+  }
+
+  /**
+   * A column with the values of replacement for the rows of rows and those
+   * of base for the others.
+   */
+  private Column merge(Column base, Column replacement, Selection rows) {
+    if (rows.dense && rows.count == size)
+      return replacement;
+    int[] selected = rows.rows;
+    if (base.numbers != null && replacement.numbers != null) {
+      double[] merged = base.numbers.clone();
+      for (int k = 0; k < rows.count; k++) {
+        merged[selected[k]] = replacement.numbers[selected[k]];
+      }
+      return Column.of(merged);
+    }
+    if (base.bools != null && replacement.bools != null) {
+      boolean[] merged = base.bools.clone();
+      for (int k = 0; k < rows.count; k++) {
+        merged[selected[k]] = replacement.bools[selected[k]];
+      }
+      return Column.of(merged);
+    }
+    Object[] merged = new Object[size];
+    for (int row = 0; row < size; row++) {
+      merged[row] = base.get(row);
+    }
+    for (int k = 0; k < rows.count; k++) {
+      merged[selected[k]] = replacement.get(selected[k]);
+    }
+    return Column.of(merged);
+  }
+
+  private Column constant(Object value) {
+    if (value instanceof Double) {
+      double[] numbers = new double[size];
+      Arrays.fill(numbers, (double) value);
+      return Column.of(numbers);
+    }
+    if (value instanceof Boolean) {
+      boolean[] bools = new boolean[size];
+      Arrays.fill(bools, (boolean) value);
+      return Column.of(bools);
+    }
+    Object[] values = new Object[size];
+    Arrays.fill(values, value);
+    return Column.of(values);
+  }
+
+  private Column binary(Token operator, Column left, Column right) {
+    if (left.numbers != null && right.numbers != null && operator.type != TokenType.EQUAL_EQUAL
+        && operator.type != TokenType.BANG_EQUAL)
+      return numeric(operator.type, left.numbers, right.numbers);
+
+    switch (operator.type) {
+      case MINUS:
+      case SLASH:
+      case STAR:
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return numeric(operator.type, numbers(operator, left, Values.NUMBER_OPERANDS),
+            numbers(operator, right, Values.NUMBER_OPERANDS));
+      case PLUS:
+        return plus(operator, left, right);
+      case EQUAL_EQUAL:
+      case BANG_EQUAL:
+        return equality(operator.type == TokenType.EQUAL_EQUAL, left, right);
+      default:
+        break;
+    }
+
+    throw new UnsupportedOperationException("Unreachable code reached!");
+  }
+
+  // The number each selected row holds; rows holding anything else fail
+  // with message.
+  private double[] numbers(Token operator, Column column, String message) {
+    if (column.numbers != null)
+      return column.numbers;
+    double[] numbers = new double[size];
+    RuntimeError error = null;
+    for (int k = 0; k < selection.count; k++) {
+      int row = selection.rows[k];
+      Object value = column.get(row);
+      if (value instanceof Double) {
+        numbers[row] = (double) value;
+      } else if (errors[row] == null) {
+        if (error == null)
+          error = new RuntimeError(operator, message);
+        fail(row, error);
+      }
+    }
+    return numbers;
+  }
+
+  // Loops over every row of the chunk, selected or not: arithmetic on
+  // doubles cannot fail, and branch-free loops vectorize.
+  private Column numeric(TokenType operator, double[] left, double[] right) {
+    if (operator == TokenType.MINUS || operator == TokenType.PLUS
+        || operator == TokenType.SLASH || operator == TokenType.STAR) {
+      double[] result = new double[size];
+      switch (operator) {
+        case MINUS:
+          for (int i = 0; i < size; i++)
+            result[i] = left[i] - right[i];
+          break;
+        case PLUS:
+          for (int i = 0; i < size; i++)
+            result[i] = left[i] + right[i];
+          break;
+        case SLASH:
+          for (int i = 0; i < size; i++)
+            result[i] = left[i] / right[i];
+          break;
+        default:
+          for (int i = 0; i < size; i++)
+            result[i] = left[i] * right[i];
+          break;
+      }
+      return Column.of(result);
+    }
+
+    boolean[] result = new boolean[size];
+    switch (operator) {
+      case GREATER:
+        for (int i = 0; i < size; i++)
+          result[i] = left[i] > right[i];
+        break;
+      case GREATER_EQUAL:
+        for (int i = 0; i < size; i++)
+          result[i] = left[i] >= right[i];
+        break;
+      case LESS:
+        for (int i = 0; i < size; i++)
+          result[i] = left[i] < right[i];
+        break;
+      default:
+        for (int i = 0; i < size; i++)
+          result[i] = left[i] <= right[i];
+        break;
+    }
+    return Column.of(result);
+  }
+
+  private Column plus(Token operator, Column left, Column right) {
+    Object[] result = new Object[size];
+    for (int k = 0; k < selection.count; k++) {
+      int row = selection.rows[k];
+      try {
+        result[row] = Values.plus(operator, left.get(row), right.get(row));
+      } catch (RuntimeError error) {
+        fail(row, error);
+      }
+    }
+    return Column.of(result);
+  }
+
+  // Doubles compare the way Double.equals() does, as isEqual() has them.
+  private Column equality(boolean equal, Column left, Column right) {
+    boolean[] result = new boolean[size];
+    if (left.numbers != null && right.numbers != null) {
+      for (int i = 0; i < size; i++)
+        result[i] = (Double.doubleToLongBits(left.numbers[i])
+            == Double.doubleToLongBits(right.numbers[i])) == equal;
+      return Column.of(result);
+    }
+    for (int k = 0; k < selection.count; k++) {
+      int row = selection.rows[k];
+      Object lhs = left.get(row);
+      Object rhs = right.get(row);
+      result[row] = Values.isEqual(lhs, rhs) == equal;
+    }
+    return Column.of(result);
+  }
+
+  private boolean isTruthy(Column column, int row) {
+    if (column.bools != null)
+      return column.bools[row];
+    if (column.numbers != null)
+      return true;
+    return Values.isTruthy(column.values[row]);
+  }
+
+  private static String stringify(Object object) {
+    if (object == null)
+      return "nil";
+    if (object instanceof Double)
+      return NumberFormatter.format((double) object);
+    return object.toString();
+  }
+
+  private void print(Column column) {
+    for (int k = 0; k < selection.count; k++) {
+      int row = selection.rows[k];
+      if (output[row] == null)
+        output[row] = new StringBuilder();
+      output[row].append(stringify(column.get(row))).append(System.lineSeparator());
+    }
+  }
+
+  @Override
+  public Column visitAssignExpr(Expr.Assign expr) {
+    Column value = evaluate(expr.value);
+    assign(expr.name, value);
+    return value;
+  }
+
+  @Override
+  public Column visitBinaryExpr(Expr.Binary expr) {
+    Column left = evaluate(expr.left);
+    Column right = evaluate(expr.right);
+    return binary(expr.operator, left, right);
+  }
+
+  @Override
+  public Column visitTernaryExpr(Expr.Ternary expr) {
+    Column condition = evaluate(expr.first);
+    int[] whenTrue = new int[selection.count];
+    int[] whenFalse = new int[selection.count];
+    int trueCount = 0;
+    int falseCount = 0;
+    for (int k = 0; k < selection.count; k++) {
+      int row = selection.rows[k];
+      if (isTruthy(condition, row))
+        whenTrue[trueCount++] = row;
+      else
+        whenFalse[falseCount++] = row;
+    }
+
+    // When every row takes the same branch it runs in this selection.
+    if (falseCount == 0)
+      return evaluate(expr.second);
+    if (trueCount == 0)
+      return evaluate(expr.last);
+
+    Selection trueRows = new Selection(whenTrue, trueCount, false, failures);
+    Column second = evaluate(expr.second, trueRows);
+    Selection falseRows = new Selection(whenFalse, falseCount, false, failures);
+    Column last = evaluate(expr.last, falseRows);
+    return merge(second, last, falseRows);
+  }
+
+  @Override
+  public Column visitGroupingExpr(Expr.Grouping expr) {
+    return evaluate(expr.expression);
+  }
+
+  @Override
+  public Column visitLiteralExpr(Expr.Literal expr) {
+    return constant(expr.value);
+  }
+
+  @Override
+  public Column visitUnaryExpr(Expr.Unary expr) {
+    Column right = evaluate(expr.right);
+
+    switch (expr.operator.type) {
+      case MINUS: {
+        double[] numbers = numbers(expr.operator, right, Values.NUMBER_OPERAND);
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++)
+          result[i] = -numbers[i];
+        return Column.of(result);
+      }
+      case BANG: {
+        boolean[] result = new boolean[size];
+        for (int k = 0; k < selection.count; k++) {
+          int row = selection.rows[k];
+          result[row] = !isTruthy(right, row);
+        }
+        return Column.of(result);
+      }
+      default:
+        break;
+    }
+
+    throw new UnsupportedOperationException("Unreachable code reached!");
+  }
+
+  @Override
+  public Column visitVariableExpr(Expr.Variable expr) {
+    return read(expr.name);
+  }
+
+  @Override
+  public Column visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    Column left = read(expr.left);
+    return binary(expr.operator, left, read(expr.right));
+  }
+
+  @Override
+  public Column visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    return binary(expr.operator, read(expr.left), constant(expr.value));
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    scopes.push(new HashMap<>());
+    try {
+      for (Stmt statement : stmt.statements) {
+        if (selection.count == 0)
+          break;
+        execute(statement);
+      }
+    } finally {
+      scopes.pop();
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    evaluate(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    print(evaluate(stmt.expression));
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    Column value = stmt.initializer == null ? Column.of(new Object[size]) : evaluate(stmt.initializer);
+    Map<Integer, Column> scope = scopes.peek();
+    Column previous = scope.get(stmt.name.symbol);
+    scope.put(stmt.name.symbol, previous == null ? value : merge(previous, value, selection));
+    return null;
+  }
+}
@@ -0,0 +1,52 @@
+package org.lox;
+
+/**
+ * Limits for a single Interpreter run. Every limit defaults to unbounded;
+ * use the with* methods to tighten them. The time limit is a wall-clock
+ * duration counted from the start of each run.
+ */
+final class Budget {
+  static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+  final long maxSteps;
+  final long maxNanos;
+  final int maxDepth;
+  final long maxStringBytes;
+
+  private Budget(long maxSteps, long maxNanos, int maxDepth, long maxStringBytes) {
+    this.maxSteps = maxSteps;
+    this.maxNanos = maxNanos;
+    this.maxDepth = maxDepth;
+    this.maxStringBytes = maxStringBytes;
+  }
+
+  // Maximum number of expressions and statements evaluated.
+  Budget withMaxSteps(long maxSteps) {
+    return new Budget(maxSteps, maxNanos, maxDepth, maxStringBytes);
+  }
+
+  Budget withMaxNanos(long maxNanos) {
+    return new Budget(maxSteps, maxNanos, maxDepth, maxStringBytes);
+  }
+
+  // Maximum number of nested block environments.
+  Budget withMaxDepth(int maxDepth) {
+    return new Budget(maxSteps, maxNanos, maxDepth, maxStringBytes);
+  }
+
+  // Maximum bytes of string data created by concatenation.
+  Budget withMaxStringBytes(long maxStringBytes) {
+    return new Budget(maxSteps, maxNanos, maxDepth, maxStringBytes);
+  }
+
+  boolean isTimed() {
+    return maxNanos != Long.MAX_VALUE;
+  }
+
+  // Differs between budgets that can cut a run short at different points.
+  @Override
+  public String toString() {
+    return "steps=" + maxSteps + " nanos=" + maxNanos + " depth=" + maxDepth
+        + " stringBytes=" + maxStringBytes;
+  }
+}
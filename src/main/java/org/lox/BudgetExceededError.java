@@ -0,0 +1,7 @@
+package org.lox;
+
+public class BudgetExceededError extends RuntimeError {
+  BudgetExceededError(Token token, String message) {
+    super(token, message);
+  }
+}
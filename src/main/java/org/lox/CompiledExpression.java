@@ -0,0 +1,303 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.lox.Values.checkNumberOperands;
+import static org.lox.Values.isEqual;
+import static org.lox.Values.isTruthy;
+
+/**
+ * A Lox expression compiled once for Java hosts to evaluate many times, such
+ * as a rule or formula snippet. Compiling scans and parses the source, gives
+ * every variable it names a slot, and turns the tree into a tree of
+ * closures over those slots, so evaluating does no parsing, dispatching or
+ * name lookups of its own.
+ *
+ * Instances are immutable and touch no global state when evaluating, so any
+ * number of threads can share one. Values are Lox values: Double, String,
+ * Boolean or null for nil. An assignment in the expression only changes the
+ * variable for the rest of that evaluation.
+ */
+public final class CompiledExpression {
+  // Stands in for a variable the bindings leave out.
+  private static final Object UNBOUND = new Object();
+
+  @FunctionalInterface
+  private interface Node {
+    Object evaluate(Object[] slots);
+  }
+
+  private final String source;
+  private final List<String> variables;
+  private final Node root;
+
+  private CompiledExpression(String source, List<String> variables, Node root) {
+    this.source = source;
+    this.variables = variables;
+    this.root = root;
+  }
+
+  /**
+   * Compiles source, a single expression without a trailing ';'.
+   *
+   * @throws IllegalArgumentException listing the syntax errors, if any
+   */
+  public static CompiledExpression compile(String source) {
+    Diagnostics diagnostics = new Diagnostics();
+    List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+    Expr expr = diagnostics.hadError() ? null : new Parser(tokens, diagnostics).parseExpression();
+    if (diagnostics.hadError()) {
+      throw new IllegalArgumentException(diagnostics.all().stream()
+          .map(DiagnosticReporter::format)
+          .collect(Collectors.joining("\n")));
+    }
+
+    Compiler compiler = new Compiler();
+    Node root = expr.accept(compiler);
+    return new CompiledExpression(source, Collections.unmodifiableList(compiler.names), root);
+  }
+
+  /**
+   * The variables the expression names, in slot order.
+   */
+  public List<String> variables() {
+    return variables;
+  }
+
+  /**
+   * Evaluates the expression with each variable bound to its value in
+   * bindings. Variables left out are undefined, and ones bound to null are
+   * nil; reading either raises an error, as it does in a script. Other
+   * Numbers are converted to Double.
+   *
+   * @throws RuntimeError if evaluation fails the way a script run would
+   * @throws IllegalArgumentException if a binding is not a Lox value
+   */
+  public Object evaluate(Map<String, ?> bindings) {
+    Object[] slots = new Object[variables.size()];
+    for (int slot = 0; slot < slots.length; slot++) {
+      String name = variables.get(slot);
+      slots[slot] = bindings.containsKey(name) ? value(name, bindings.get(name)) : UNBOUND;
+    }
+    return root.evaluate(slots);
+  }
+
+  /**
+   * Evaluates the expression with the variables bound to values in slot
+   * order, the order of variables(), skipping the map lookups.
+   *
+   * @throws RuntimeError if evaluation fails the way a script run would
+   * @throws IllegalArgumentException if values do not match the slots
+   */
+  public Object evaluate(Object... values) {
+    if (values.length != variables.size())
+      throw new IllegalArgumentException(
+          "Expected " + variables.size() + " values, got " + values.length + ".");
+    Object[] slots = new Object[values.length];
+    for (int slot = 0; slot < slots.length; slot++) {
+      slots[slot] = value(variables.get(slot), values[slot]);
+    }
+    return root.evaluate(slots);
+  }
+
+  @Override
+  public String toString() {
+    return source;
+  }
+
+  private static Object value(String name, Object value) {
+    if (value == null || value instanceof Double || value instanceof String || value instanceof Boolean)
+      return value;
+    if (value instanceof Number)
+      return ((Number) value).doubleValue();
+    throw new IllegalArgumentException(
+        "'" + name + "' is bound to a " + value.getClass().getName() + ", not a Lox value.");
+  }
+
+  private static Object read(Object[] slots, int slot, Token name) {
+    Object value = slots[slot];
+    if (value == UNBOUND)
+      throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    if (value == null)
+      throw new RuntimeError(name,
+          "Variable '" + name.lexeme + "' cannot be accessed before initialization.");
+    return value;
+  }
+
+  private static Object assign(Object[] slots, int slot, Token name, Object value) {
+    if (slots[slot] == UNBOUND)
+      throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    slots[slot] = value;
+    return value;
+  }
+
+  /**
+   * Builds a closure for every node, with the operator picked once here
+   * rather than on every evaluation. Each distinct variable name gets the
+   * next slot.
+   */
+  private static final class Compiler implements Expr.Visitor<Node> {
+    final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private int slot(Token name) {
+      return slots.computeIfAbsent(name.lexeme, lexeme -> {
+        names.add(lexeme);
+        return names.size() - 1;
+      });
+    }
+
+    private static Node binary(Token operator, Node left, Node right) {
+      switch (operator.type) {
+        case MINUS:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l - (double) r;
+          };
+        case PLUS:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            return Values.plus(operator, l, right.evaluate(slots));
+          };
+        case SLASH:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l / (double) r;
+          };
+        case STAR:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l * (double) r;
+          };
+        case GREATER:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l > (double) r;
+          };
+        case GREATER_EQUAL:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l >= (double) r;
+          };
+        case LESS:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l < (double) r;
+          };
+        case LESS_EQUAL:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            Object r = right.evaluate(slots);
+            checkNumberOperands(operator, l, r);
+            return (double) l <= (double) r;
+          };
+        case EQUAL_EQUAL:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            return isEqual(l, right.evaluate(slots));
+          };
+        case BANG_EQUAL:
+          return slots -> {
+            Object l = left.evaluate(slots);
+            return !isEqual(l, right.evaluate(slots));
+          };
+        default:
+          break;
+      }
+
+      throw new UnsupportedOperationException("Unreachable code reached!");
+    }
+
+    private Node variable(Token name) {
+      int slot = slot(name);
+      return slots -> read(slots, slot, name);
+    }
+
+    @Override
+    public Node visitAssignExpr(Expr.Assign expr) {
+      int slot = slot(expr.name);
+      Node value = expr.value.accept(this);
+      return slots -> assign(slots, slot, expr.name, value.evaluate(slots));
+    }
+
+    @Override
+    public Node visitBinaryExpr(Expr.Binary expr) {
+      return binary(expr.operator, expr.left.accept(this), expr.right.accept(this));
+    }
+
+    @Override
+    public Node visitTernaryExpr(Expr.Ternary expr) {
+      Node first = expr.first.accept(this);
+      Node second = expr.second.accept(this);
+      Node last = expr.last.accept(this);
+      return slots -> isTruthy(first.evaluate(slots)) ? second.evaluate(slots) : last.evaluate(slots);
+    }
+
+    @Override
+    public Node visitGroupingExpr(Expr.Grouping expr) {
+      return expr.expression.accept(this);
+    }
+
+    @Override
+    public Node visitLiteralExpr(Expr.Literal expr) {
+      Object value = expr.value;
+      return slots -> value;
+    }
+
+    @Override
+    public Node visitUnaryExpr(Expr.Unary expr) {
+      Node right = expr.right.accept(this);
+      Token operator = expr.operator;
+      switch (operator.type) {
+        case MINUS:
+          return slots -> {
+            Object value = right.evaluate(slots);
+            if (!(value instanceof Double))
+              throw new RuntimeError(operator, Values.NUMBER_OPERAND);
+            return -(double) value;
+          };
+        case BANG:
+          return slots -> !isTruthy(right.evaluate(slots));
+        default:
+          break;
+      }
+
+      throw new UnsupportedOperationException("Unreachable code reached!");
+    }
+
+    @Override
+    public Node visitVariableExpr(Expr.Variable expr) {
+      return variable(expr.name);
+    }
+
+    // Parsing never builds fused nodes, but they compile the same as the
+    // nodes they replace.
+    @Override
+    public Node visitBinaryVarsExpr(Expr.BinaryVars expr) {
+      return binary(expr.operator, variable(expr.left), variable(expr.right));
+    }
+
+    @Override
+    public Node visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+      Object value = expr.value;
+      return binary(expr.operator, variable(expr.left), slots -> value);
+    }
+  }
+}
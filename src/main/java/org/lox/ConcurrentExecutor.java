@@ -0,0 +1,354 @@
+package org.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Runs independent top-level statements concurrently. Each statement's
+ * reads and writes of global variables are collected first, and a statement
+ * waits for every earlier one it conflicts with: one that writes a global
+ * it reads or writes, or reads a global it writes. Statements without such a
+ * conflict run at the same time, one per available processor, each on an
+ * interpreter of its own sharing one SynchronizedEnvironment of globals.
+ *
+ * What a statement prints goes into a buffer of its own, and the buffers
+ * are written out in program order. When a statement fails, the statements
+ * depending on it are skipped, and output stops after the failing statement
+ * with its error reported, just as interpret() does it. Statements after it
+ * that did not depend on it may have run already, so the globals can differ
+ * from a sequential run once there has been an error.
+ */
+class ConcurrentExecutor {
+  private ConcurrentExecutor() {
+  }
+
+  /**
+   * Runs statements against globals, printing to out. With repl set, the
+   * values of top-level expression statements are printed as well.
+   */
+  static void interpret(List<Stmt> statements, boolean repl, SynchronizedEnvironment globals,
+      Diagnostics diagnostics, PrintStream out) {
+    Scheduler scheduler = new Scheduler(statements, repl, globals);
+    int workers = Math.min(Runtime.getRuntime().availableProcessors(), statements.size());
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 1; i < workers; i++) {
+      Thread thread = new Thread(scheduler::work, "lox-concurrent-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+    scheduler.work();
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    if (scheduler.crash instanceof RuntimeException)
+      throw (RuntimeException) scheduler.crash;
+    if (scheduler.crash instanceof Error)
+      throw (Error) scheduler.crash;
+
+    // Skipped statements all follow a failed one, so output stops first.
+    for (int i = 0; i < statements.size(); i++) {
+      ByteArrayOutputStream buffer = scheduler.buffers[i];
+      if (buffer != null)
+        out.write(buffer.toByteArray(), 0, buffer.size());
+      if (scheduler.failed[i]) {
+        diagnostics.addAll(scheduler.errors[i]);
+        break;
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Hands out statements whose dependencies have all run, lowest index
+   * first, to any number of threads calling work(). A thread goes straight
+   * on to the next ready statement, so independent statements cost no
+   * thread handoffs.
+   */
+  private static class Scheduler {
+    private final List<Stmt> statements;
+    private final boolean repl;
+    private final SynchronizedEnvironment globals;
+    private final List<int[]> dependencies;
+    private final List<List<Integer>> dependents = new ArrayList<>();
+    // Dependencies of each statement that have not run yet.
+    private final int[] waiting;
+    private final PriorityQueue<Integer> ready = new PriorityQueue<>();
+    private int remaining;
+
+    final ByteArrayOutputStream[] buffers;
+    final Diagnostics[] errors;
+    final boolean[] failed;
+    Throwable crash = null;
+
+    Scheduler(List<Stmt> statements, boolean repl, SynchronizedEnvironment globals) {
+      this.statements = statements;
+      this.repl = repl;
+      this.globals = globals;
+      this.dependencies = dependencies(statements);
+      this.waiting = new int[statements.size()];
+      this.remaining = statements.size();
+      this.buffers = new ByteArrayOutputStream[statements.size()];
+      this.errors = new Diagnostics[statements.size()];
+      this.failed = new boolean[statements.size()];
+
+      for (int i = 0; i < statements.size(); i++) {
+        dependents.add(new ArrayList<>());
+        waiting[i] = dependencies.get(i).length;
+        for (int dependency : dependencies.get(i)) {
+          dependents.get(dependency).add(i);
+        }
+        if (waiting[i] == 0)
+          ready.add(i);
+      }
+    }
+
+    void work() {
+      // One interpreter per thread; its output goes to the buffer of
+      // whichever statement it is running.
+      Redirect redirect = new Redirect();
+      PrintStream out = new PrintStream(redirect, false, Charset.defaultCharset());
+      Diagnostics diagnostics = new Diagnostics();
+      Interpreter interpreter = new Interpreter(diagnostics, globals, out);
+
+      for (;;) {
+        int index;
+        boolean skip = false;
+        synchronized (this) {
+          while (ready.isEmpty() && remaining > 0) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              return;
+            }
+          }
+          if (remaining == 0)
+            return;
+          index = ready.poll();
+          for (int dependency : dependencies.get(index)) {
+            skip |= failed[dependency];
+          }
+        }
+
+        boolean failure = skip;
+        if (!skip) {
+          try {
+            redirect.index = index;
+            interpreter.interpret(List.of(statements.get(index)), repl, diagnostics);
+            out.flush();
+            if (diagnostics.hadRuntimeError()) {
+              failure = true;
+              errors[index] = diagnostics;
+              diagnostics = new Diagnostics();
+            }
+          } catch (RuntimeException | Error e) {
+            failure = true;
+            synchronized (this) {
+              if (crash == null)
+                crash = e;
+            }
+          }
+        }
+
+        synchronized (this) {
+          failed[index] = failure;
+          remaining--;
+          for (int dependent : dependents.get(index)) {
+            if (--waiting[dependent] == 0)
+              ready.add(dependent);
+          }
+          notifyAll();
+        }
+      }
+    }
+
+    // Creates a statement's buffer on its first write.
+    private class Redirect extends OutputStream {
+      int index;
+
+      @Override
+      public void write(int b) {
+        buffer().write(b);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) {
+        buffer().write(bytes, offset, length);
+      }
+
+      private ByteArrayOutputStream buffer() {
+        if (buffers[index] == null)
+          buffers[index] = new ByteArrayOutputStream();
+        return buffers[index];
+      }
+    }
+  }
+
+  /**
+   * For every statement, the indices of the earlier statements it has to
+   * wait for. Waiting on the last writer of each global and on the readers
+   * since then is enough, since those wait on everything before them.
+   */
+  private static List<int[]> dependencies(List<Stmt> statements) {
+    Map<Integer, Integer> lastWriter = new HashMap<>();
+    Map<Integer, List<Integer>> readers = new HashMap<>();
+    List<int[]> dependencies = new ArrayList<>(statements.size());
+
+    for (int i = 0; i < statements.size(); i++) {
+      Accesses accesses = new Accesses();
+      statements.get(i).accept(accesses);
+      Set<Integer> before = new HashSet<>();
+      for (int symbol : accesses.reads) {
+        Integer writer = lastWriter.get(symbol);
+        if (writer != null)
+          before.add(writer);
+      }
+      for (int symbol : accesses.writes) {
+        Integer writer = lastWriter.get(symbol);
+        if (writer != null)
+          before.add(writer);
+        before.addAll(readers.getOrDefault(symbol, List.of()));
+      }
+
+      for (int symbol : accesses.reads) {
+        readers.computeIfAbsent(symbol, s -> new ArrayList<>()).add(i);
+      }
+      for (int symbol : accesses.writes) {
+        lastWriter.put(symbol, i);
+        readers.remove(symbol);
+      }
+      dependencies.add(before.stream().mapToInt(Integer::intValue).toArray());
+    }
+    return dependencies;
+  }
+
+  /**
+   * Collects the globals a statement reads and writes. A name declared in
+   * an enclosing block is local from its declaration on; before that, and
+   * outside of every block, it refers to a global. Both ternary branches
+   * count, since either may run.
+   */
+  private static class Accesses implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    final Set<Integer> reads = new HashSet<>();
+    final Set<Integer> writes = new HashSet<>();
+    private final Deque<Set<Integer>> scopes = new ArrayDeque<>();
+
+    private boolean isLocal(int symbol) {
+      for (Set<Integer> scope : scopes) {
+        if (scope.contains(symbol))
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      expr.value.accept(this);
+      if (!isLocal(expr.name.symbol))
+        writes.add(expr.name.symbol);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      expr.left.accept(this);
+      expr.right.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+      expr.first.accept(this);
+      expr.second.accept(this);
+      expr.last.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      return expr.expression.accept(this);
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      return expr.right.accept(this);
+    }
+
+    private void read(Token name) {
+      if (!isLocal(name.symbol))
+        reads.add(name.symbol);
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      read(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryVarsExpr(Expr.BinaryVars expr) {
+      read(expr.left);
+      read(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+      read(expr.left);
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+      scopes.push(new HashSet<>());
+      for (Stmt statement : stmt.statements) {
+        statement.accept(this);
+      }
+      scopes.pop();
+      return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      return stmt.expression.accept(this);
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+      return stmt.expression.accept(this);
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+      if (stmt.initializer != null)
+        stmt.initializer.accept(this);
+      if (scopes.isEmpty())
+        writes.add(stmt.name.symbol);
+      else
+        scopes.peek().add(stmt.name.symbol);
+      return null;
+    }
+  }
+}
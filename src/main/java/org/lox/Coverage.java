@@ -0,0 +1,218 @@
+package org.lox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Line coverage of one source file. A line is executable when some node
+ * carrying a token on it is in a program handed to the interpreter, and
+ * executed once the interpreter has visited such a node. Both sets are
+ * bitmaps indexed by line, so marking a line is a shift and an or.
+ *
+ * Marking is not thread-safe, so a Coverage belongs to one interpreter.
+ */
+class Coverage {
+  final String file;
+  private long[] executable = new long[0];
+  private long[] executed = new long[0];
+
+  Coverage(String file) {
+    this.file = file;
+  }
+
+  void mark(int line) {
+    int word = line >>> 6;
+    if (word < executed.length)
+      executed[word] |= 1L << line;
+  }
+
+  // Records the lines of every node in statements as executable.
+  void addExecutable(List<Stmt> statements) {
+    LineCollector collector = new LineCollector();
+    for (Stmt stmt : statements) {
+      stmt.accept(collector);
+    }
+  }
+
+  private void addLine(int line) {
+    ensure(line);
+    executable[line >>> 6] |= 1L << line;
+  }
+
+  private void ensure(int line) {
+    int words = (line >>> 6) + 1;
+    if (words > executable.length) {
+      int size = Math.max(words, executable.length * 2);
+      executable = Arrays.copyOf(executable, size);
+      executed = Arrays.copyOf(executed, size);
+    }
+  }
+
+  private static boolean get(long[] bits, int line) {
+    int word = line >>> 6;
+    return word < bits.length && (bits[word] & (1L << line)) != 0;
+  }
+
+  /**
+   * Adds this run's hits to the LCOV tracefile at path, creating it if
+   * needed. Records for other files in it are kept, and hit counts for the
+   * same file are summed, so a suite of runs accumulates into one report.
+   * The file is locked while it is read and rewritten, so jlox processes
+   * writing to the same file at once don't lose each other's hits.
+   */
+  void writeLcov(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = channel.lock()) {
+      // Read through the locked channel: closing any other descriptor on
+      // the file would release the lock.
+      BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+      Map<String, Map<Integer, Long>> files = readLcov(in);
+      Map<Integer, Long> lines = files.computeIfAbsent(file, f -> new TreeMap<>());
+      for (int line = 0; line < executable.length << 6; line++) {
+        if (get(executable, line)) {
+          lines.merge(line, get(executed, line) ? 1L : 0L, Long::sum);
+        }
+      }
+
+      channel.truncate(0);
+      channel.position(0);
+      PrintWriter out = new PrintWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)));
+      for (Map.Entry<String, Map<Integer, Long>> entry : files.entrySet()) {
+        out.println("TN:");
+        out.println("SF:" + entry.getKey());
+        int hit = 0;
+        for (Map.Entry<Integer, Long> line : entry.getValue().entrySet()) {
+          out.println("DA:" + line.getKey() + "," + line.getValue());
+          if (line.getValue() > 0)
+            hit++;
+        }
+        out.println("LF:" + entry.getValue().size());
+        out.println("LH:" + hit);
+        out.println("end_of_record");
+      }
+      out.flush();
+      if (out.checkError())
+        throw new IOException("Could not write " + path + ".");
+    }
+  }
+
+  // Only the SF and DA records matter; LF and LH are recomputed.
+  private static Map<String, Map<Integer, Long>> readLcov(BufferedReader in) throws IOException {
+    Map<String, Map<Integer, Long>> files = new TreeMap<>();
+    Map<Integer, Long> lines = null;
+    for (String record = in.readLine(); record != null; record = in.readLine()) {
+      if (record.startsWith("SF:")) {
+        lines = files.computeIfAbsent(record.substring(3), f -> new TreeMap<>());
+      } else if (record.startsWith("DA:") && lines != null) {
+        String[] fields = record.substring(3).split(",");
+        lines.merge(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), Long::sum);
+      } else if (record.equals("end_of_record")) {
+        lines = null;
+      }
+    }
+    return files;
+  }
+
+  // Visits the same tokens the interpreter marks.
+  private class LineCollector implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      addLine(expr.name.line);
+      return expr.value.accept(this);
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      addLine(expr.operator.line);
+      expr.left.accept(this);
+      return expr.right.accept(this);
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+      addLine(expr.operator1.line);
+      // The else branch counts as run on the line of its ':'.
+      addLine(expr.operator2.line);
+      expr.first.accept(this);
+      expr.second.accept(this);
+      return expr.last.accept(this);
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      return expr.expression.accept(this);
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      addLine(expr.operator.line);
+      return expr.right.accept(this);
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      addLine(expr.name.line);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryVarsExpr(Expr.BinaryVars expr) {
+      addLine(expr.left.line);
+      addLine(expr.operator.line);
+      addLine(expr.right.line);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+      addLine(expr.left.line);
+      addLine(expr.operator.line);
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+      for (Stmt statement : stmt.statements) {
+        statement.accept(this);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      return stmt.expression.accept(this);
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+      addLine(stmt.keyword.line);
+      return stmt.expression.accept(this);
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+      addLine(stmt.name.line);
+      if (stmt.initializer != null)
+        stmt.initializer.accept(this);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lox.VariableKinds.Kind;
+
+/**
+ * Removes code whose evaluation can neither fail nor have an effect:
+ * expression statements inside blocks made only of such code, blocks left
+ * empty, grouping parentheses, and ternaries whose condition is a literal.
+ *
+ * A forward pass tracks what is known about each variable declared in the
+ * program in VariableKinds. A variable read only counts as safe when the variable is known to
+ * be defined with a non-nil value, since reading an undefined or nil
+ * variable raises a RuntimeError. Operators only count as safe when their
+ * operand types are known to be accepted. Anything that might raise an
+ * error or assign is kept, so a program behaves exactly as before, minus
+ * the wasted work.
+ */
+class DeadCodeEliminator implements Expr.Visitor<DeadCodeEliminator.Result>, Stmt.Visitor<Stmt> {
+  /**
+   * The rewritten expression, the kind of its value when it completes, and
+   * whether evaluating it is free of errors and side effects.
+   */
+  record Result(Expr expr, Kind kind, boolean pure) {
+  }
+
+  private final VariableKinds variables = new VariableKinds();
+
+  private DeadCodeEliminator() {
+  }
+
+  /**
+   * With repl set, top-level expression statements are kept, since the
+   * interpreter prints their values.
+   */
+  static List<Stmt> eliminate(List<Stmt> statements, boolean repl) {
+    DeadCodeEliminator eliminator = new DeadCodeEliminator();
+    List<Stmt> result = new ArrayList<>(statements.size());
+    for (Stmt stmt : statements) {
+      if (repl && stmt instanceof Stmt.Expression) {
+        Expr expr = ((Stmt.Expression) stmt).expression;
+        result.add(new Stmt.Expression(eliminator.analyze(expr).expr));
+        continue;
+      }
+      Stmt optimized = stmt.accept(eliminator);
+      if (optimized != null)
+        result.add(optimized);
+    }
+    return result;
+  }
+
+  private Result analyze(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private List<Stmt> analyze(List<Stmt> statements) {
+    List<Stmt> result = new ArrayList<>(statements.size());
+    for (Stmt stmt : statements) {
+      Stmt optimized = stmt.accept(this);
+      if (optimized != null)
+        result.add(optimized);
+    }
+    return result;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    variables.beginScope();
+    List<Stmt> statements = analyze(stmt.statements);
+    variables.endScope();
+    if (statements.isEmpty())
+      return null;
+    return new Stmt.Block(statements);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Result result = analyze(stmt.expression);
+    if (result.pure)
+      return null;
+    return new Stmt.Expression(result.expr);
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    return new Stmt.Print(stmt.keyword, analyze(stmt.expression).expr);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = null;
+    Kind kind = Kind.NIL;
+    if (stmt.initializer != null) {
+      Result result = analyze(stmt.initializer);
+      initializer = result.expr;
+      kind = result.kind;
+    }
+    variables.declare(stmt.name, kind);
+    return new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Result visitAssignExpr(Expr.Assign expr) {
+    Result value = analyze(expr.value);
+    variables.assigned(expr.name, value.kind);
+    return new Result(new Expr.Assign(expr.name, value.expr), value.kind, false);
+  }
+
+  @Override
+  public Result visitBinaryExpr(Expr.Binary expr) {
+    Result left = analyze(expr.left);
+    Result right = analyze(expr.right);
+    Expr rewritten = new Expr.Binary(left.expr, expr.operator, right.expr);
+    boolean pure = left.pure && right.pure;
+    boolean numbers = left.kind == Kind.NUMBER && right.kind == Kind.NUMBER;
+
+    switch (expr.operator.type) {
+      case MINUS:
+      case SLASH:
+      case STAR:
+        return new Result(rewritten, Kind.NUMBER, pure && numbers);
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return new Result(rewritten, Kind.BOOL, pure && numbers);
+      case PLUS:
+        if (numbers)
+          return new Result(rewritten, Kind.NUMBER, pure);
+        if (left.kind == Kind.STRING && right.kind == Kind.STRING)
+          return new Result(rewritten, Kind.STRING, pure);
+        return new Result(rewritten, Kind.VALUE, false);
+      case EQUAL_EQUAL:
+      case BANG_EQUAL:
+        return new Result(rewritten, Kind.BOOL, pure);
+      default:
+        return new Result(rewritten, Kind.UNKNOWN, false);
+    }
+  }
+
+  @Override
+  public Result visitTernaryExpr(Expr.Ternary expr) {
+    Result first = analyze(expr.first);
+
+    if (first.pure && first.expr instanceof Expr.Literal) {
+      Object condition = ((Expr.Literal) first.expr).value;
+      boolean truthy = condition instanceof Boolean ? (boolean) condition : condition != null;
+      return analyze(truthy ? expr.second : expr.last);
+    }
+
+    variables.beginBranch();
+    Result second = analyze(expr.second);
+    Result last = analyze(expr.last);
+    variables.endBranch();
+
+    Expr rewritten = new Expr.Ternary(first.expr, expr.operator1, second.expr, expr.operator2, last.expr);
+    return new Result(rewritten, second.kind.join(last.kind), first.pure && second.pure && last.pure);
+  }
+
+  @Override
+  public Result visitGroupingExpr(Expr.Grouping expr) {
+    return analyze(expr.expression);
+  }
+
+  @Override
+  public Result visitLiteralExpr(Expr.Literal expr) {
+    return new Result(expr, Kind.of(expr.value), true);
+  }
+
+  @Override
+  public Result visitUnaryExpr(Expr.Unary expr) {
+    Result right = analyze(expr.right);
+    Expr rewritten = new Expr.Unary(expr.operator, right.expr);
+    switch (expr.operator.type) {
+      case MINUS:
+        return new Result(rewritten, Kind.NUMBER, right.pure && right.kind == Kind.NUMBER);
+      case BANG:
+        return new Result(rewritten, Kind.BOOL, right.pure);
+      default:
+        return new Result(rewritten, Kind.UNKNOWN, false);
+    }
+  }
+
+  @Override
+  public Result visitVariableExpr(Expr.Variable expr) {
+    // Only a variable known to hold a value cannot fail to be read.
+    return new Result(expr, variables.read(expr.name), variables.lookup(expr.name).isValue());
+  }
+
+  // Fused nodes are built after this pass runs, so they are only handled
+  // conservatively: kept, and never counted as pure.
+
+  @Override
+  public Result visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    return new Result(expr, Kind.UNKNOWN, false);
+  }
+
+  @Override
+  public Result visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    return new Result(expr, Kind.UNKNOWN, false);
+  }
+}
@@ -0,0 +1,50 @@
+package org.lox;
+
+import java.io.PrintStream;
+
+import org.lox.Diagnostics.Diagnostic;
+
+class DiagnosticReporter {
+  private final PrintStream out;
+
+  DiagnosticReporter(PrintStream out) {
+    this.out = out;
+  }
+
+  void report(Diagnostics diagnostics) {
+    for (Diagnostic diagnostic : diagnostics.all()) {
+      out.println(format(diagnostic));
+    }
+    if (diagnostics.dropped() > 0) {
+      out.println("... " + diagnostics.dropped() + " more errors.");
+    }
+  }
+
+  /**
+   * Reports diagnostics, followed by what trace recorded if there was a
+   * runtime error.
+   */
+  void report(Diagnostics diagnostics, ExecutionTrace trace) {
+    report(diagnostics);
+    if (diagnostics.hadRuntimeError() && trace != null && !trace.isEmpty()) {
+      out.print(trace.dump());
+    }
+  }
+
+  static String format(Diagnostic diagnostic) {
+    switch (diagnostic.kind()) {
+      case RUNTIME:
+        return diagnostic.message() + "\n[line" + diagnostic.line() + "]";
+      case PARSE:
+        String where = diagnostic.lexeme().isEmpty()
+            ? " at end"
+            : " at '" + diagnostic.lexeme() + "'";
+        return "[line " + diagnostic.line() + "] Error" + where + ": " + diagnostic.message();
+      case WARNING:
+        return "[line " + diagnostic.line() + "] Warning at '" + diagnostic.lexeme() + "': "
+            + diagnostic.message();
+      default:
+        return "[line " + diagnostic.line() + "] Error: " + diagnostic.message();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.lox.Token.TokenType;
+
+/**
+ * Collects the errors of a run as structured records instead of printing
+ * them. A DiagnosticReporter turns them into output. Once the optional limit
+ * is reached further records are only counted, but the error flags are still
+ * set.
+ */
+class Diagnostics {
+  enum Kind {
+    SCAN,
+    PARSE,
+    RUNTIME,
+    // Does not count as an error.
+    WARNING
+  }
+
+  /**
+   * lexeme is null for scan errors and empty for parse errors reported at
+   * the end of the input.
+   */
+  record Diagnostic(Kind kind, int line, String lexeme, String message) {
+  }
+
+  private final List<Diagnostic> diagnostics = new ArrayList<>();
+  private final int limit;
+  private int dropped = 0;
+  private boolean hadError = false;
+  private boolean hadRuntimeError = false;
+  private boolean exceededBudget = false;
+
+  Diagnostics() {
+    this(Integer.MAX_VALUE);
+  }
+
+  Diagnostics(int limit) {
+    this.limit = limit;
+  }
+
+  void error(int line, String message) {
+    hadError = true;
+    add(new Diagnostic(Kind.SCAN, line, null, message));
+    syntaxErrorEvent(line, null, message);
+  }
+
+  void error(Token token, String message) {
+    hadError = true;
+    String lexeme = token.type == TokenType.EOF ? "" : token.lexeme;
+    add(new Diagnostic(Kind.PARSE, token.line, lexeme, message));
+    syntaxErrorEvent(token.line, lexeme, message);
+  }
+
+  void warning(Token token, String message) {
+    add(new Diagnostic(Kind.WARNING, token.line, token.lexeme, message));
+  }
+
+  /**
+   * An error raised on a node without any token, such as a budget running
+   * out on a literal, is recorded on line 0.
+   */
+  void runtimeError(RuntimeError error) {
+    hadRuntimeError = true;
+    exceededBudget |= error instanceof BudgetExceededError;
+    Token token = error.token;
+    add(new Diagnostic(Kind.RUNTIME,
+        token == null ? 0 : token.line,
+        token == null ? "" : token.lexeme,
+        error.getMessage()));
+
+    LoxEvents.RuntimeErrorEvent event = new LoxEvents.RuntimeErrorEvent();
+    if (event.isEnabled()) {
+      event.line = token == null ? 0 : token.line;
+      event.lexeme = token == null ? "" : token.lexeme;
+      event.message = error.getMessage();
+      event.commit();
+    }
+  }
+
+  private static void syntaxErrorEvent(int line, String lexeme, String message) {
+    LoxEvents.SyntaxErrorEvent event = new LoxEvents.SyntaxErrorEvent();
+    if (event.isEnabled()) {
+      event.line = line;
+      event.lexeme = lexeme;
+      event.message = message;
+      event.commit();
+    }
+  }
+
+  /**
+   * Appends everything other collected, as if it had been reported here.
+   */
+  void addAll(Diagnostics other) {
+    hadError |= other.hadError;
+    hadRuntimeError |= other.hadRuntimeError;
+    exceededBudget |= other.exceededBudget;
+    dropped += other.dropped;
+    for (Diagnostic diagnostic : other.diagnostics) {
+      add(diagnostic);
+    }
+  }
+
+  private void add(Diagnostic diagnostic) {
+    if (diagnostics.size() < limit) {
+      diagnostics.add(diagnostic);
+    } else {
+      dropped++;
+    }
+  }
+
+  boolean hadError() {
+    return hadError;
+  }
+
+  boolean hadRuntimeError() {
+    return hadRuntimeError;
+  }
+
+  /**
+   * Whether a run stopped because it ran out of its Budget.
+   */
+  boolean exceededBudget() {
+    return exceededBudget;
+  }
+
+  List<Diagnostic> all() {
+    return Collections.unmodifiableList(diagnostics);
+  }
+
+  int dropped() {
+    return dropped;
+  }
+
+  void clear() {
+    diagnostics.clear();
+    dropped = 0;
+    hadError = false;
+    hadRuntimeError = false;
+    exceededBudget = false;
+  }
+}
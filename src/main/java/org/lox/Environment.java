@@ -1,23 +1,60 @@
 package org.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class Environment {
+  // Stands in for "not bound here", since null means uninitialized.
+  private static final Object ABSENT = new Object();
+
   final Environment enclosing;
-  private final Map<String, Object> values = new HashMap<>();
+  // Frozen bindings this environment was forked from, shared with every
+  // other fork of them. Lookups fall through to it; writes never reach it.
+  private final Environment base;
+  private final SymbolMap values;
+  private boolean frozen = false;
 
   Environment() {
     this.enclosing = null;
+    this.base = null;
+    this.values = new SymbolMap();
+  }
+
+  /**
+   * Globals sized up front for about size bindings, so defining them never
+   * has to grow the map.
+   */
+  Environment(int size) {
+    this.enclosing = null;
+    this.base = null;
+    this.values = new SymbolMap(Math.max(8, Integer.highestOneBit(Math.max(1, size * 4 / 3)) << 1));
   }
 
   Environment(Environment enclosing) {
     this.enclosing = enclosing;
+    this.base = null;
+    this.values = new SymbolMap();
+  }
+
+  private Environment(Environment enclosing, Environment base) {
+    this.enclosing = enclosing;
+    this.base = base;
+    this.values = new SymbolMap();
+  }
+
+  /**
+   * Freezes this environment and returns a new one that starts out with the
+   * same bindings. Forking is O(1): the fork only stores the bindings it
+   * defines or assigns itself, so any number of forks can share one large
+   * set of globals. Once forked, this environment rejects further writes.
+   */
+  Environment fork() {
+    frozen = true;
+    return new Environment(enclosing, this);
   }
 
   Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      Object value = values.get(name.lexeme);
+    Object value = lookup(name.symbol);
+    if (value != ABSENT) {
       if (value == null)
       throw new RuntimeError(
         name,
@@ -33,12 +70,18 @@ public class Environment {
   }
 
   void define(String name, Object value) {
-    values.put(name, value);
+    define(SymbolTable.intern(name), value);
+  }
+
+  void define(int symbol, Object value) {
+    checkWritable();
+    values.put(symbol, value);
   }
 
   void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
+    if (lookup(name.symbol) != ABSENT) {
+      checkWritable();
+      values.put(name.symbol, value);
       return;
     }
 
@@ -49,4 +92,44 @@ public class Environment {
 
     throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
   }
+
+  /**
+   * Passes every binding visible here, including those of the frozen
+   * environments this was forked from, to action once, in no particular
+   * order. Bindings of enclosing environments are left out.
+   */
+  void forEach(BiConsumer<Integer, Object> action) {
+    for (Environment environment = this; environment != null; environment = environment.base) {
+      Environment owner = environment;
+      owner.values.forEach((symbol, value) -> {
+        if (!boundBefore(symbol, owner))
+          action.accept(symbol, value);
+      });
+    }
+  }
+
+  // Whether a fork between this and stop binds symbol, hiding stop's
+  // binding of it.
+  private boolean boundBefore(int symbol, Environment stop) {
+    for (Environment environment = this; environment != stop; environment = environment.base) {
+      if (environment.values.get(symbol, ABSENT) != ABSENT)
+        return true;
+    }
+    return false;
+  }
+
+  // The value bound to symbol here or in the frozen bases, or ABSENT.
+  private Object lookup(int symbol) {
+    for (Environment environment = this; environment != null; environment = environment.base) {
+      Object value = environment.values.get(symbol, ABSENT);
+      if (value != ABSENT)
+        return value;
+    }
+    return ABSENT;
+  }
+
+  private void checkWritable() {
+    if (frozen)
+      throw new IllegalStateException("Cannot write to a forked environment.");
+  }
 }
@@ -0,0 +1,147 @@
+package org.lox;
+
+/**
+ * The last statements an interpreter ran and the last values it stored in
+ * variables, kept so that a runtime error can be reported along with how
+ * execution got there. Both are rings of preallocated arrays holding the
+ * nodes, names and values by reference, so recording an entry is an array
+ * store or two and allocates nothing. Lox values are immutable, and lines,
+ * kinds and summaries are only worked out when the trace is dumped.
+ *
+ * With an Interner, whose shared nodes carry the lines of their first
+ * occurrence, each entry also keeps the top-level statement it ran under,
+ * so that a line is reported where it actually ran.
+ *
+ * Like Coverage, a trace belongs to a single interpreter and is not
+ * thread-safe.
+ */
+class ExecutionTrace {
+  static final int CAPACITY = 16;
+
+  // Longer strings are cut short when dumped.
+  private static final int MAX_STRING = 32;
+
+  private final int mask;
+
+  // Null unless the statements run were interned.
+  private Interner interner;
+  // The top-level statement running now.
+  private Stmt root;
+
+  private final Stmt[] statementNodes;
+  private final Stmt[] statementRoots;
+  private long statements = 0;
+
+  private final Token[] assignmentNames;
+  private final Object[] assignmentValues;
+  private final Stmt[] assignmentRoots;
+  private long assignments = 0;
+
+  ExecutionTrace() {
+    this(CAPACITY);
+  }
+
+  ExecutionTrace(int capacity) {
+    if (Integer.bitCount(capacity) != 1)
+      throw new IllegalArgumentException("Capacity must be a power of two.");
+    this.mask = capacity - 1;
+    this.statementNodes = new Stmt[capacity];
+    this.statementRoots = new Stmt[capacity];
+    this.assignmentNames = new Token[capacity];
+    this.assignmentValues = new Object[capacity];
+    this.assignmentRoots = new Stmt[capacity];
+  }
+
+  /**
+   * Reports lines through interner, which the statements run from now on
+   * have been interned with.
+   */
+  void setInterner(Interner interner) {
+    this.interner = interner;
+  }
+
+  // Called as each top-level statement starts.
+  void root(Stmt stmt) {
+    root = stmt;
+  }
+
+  void statement(Stmt stmt) {
+    int slot = (int) statements++ & mask;
+    statementNodes[slot] = stmt;
+    if (interner != null)
+      statementRoots[slot] = root;
+  }
+
+  void assignment(Token name, Object value) {
+    int slot = (int) assignments++ & mask;
+    assignmentNames[slot] = name;
+    assignmentValues[slot] = value;
+    if (interner != null)
+      assignmentRoots[slot] = root;
+  }
+
+  boolean isEmpty() {
+    return statements == 0 && assignments == 0;
+  }
+
+  /**
+   * The recorded statements and assignments, oldest first, one per line.
+   */
+  String dump() {
+    StringBuilder dump = new StringBuilder();
+    long first = Math.max(0, statements - statementNodes.length);
+    if (statements > first) {
+      dump.append("Last statements run:\n");
+      for (long i = first; i < statements; i++) {
+        int slot = (int) i & mask;
+        Stmt stmt = statementNodes[slot];
+        // Blocks and literal expressions carry no token of their own.
+        Token token = FirstToken.of(stmt);
+        dump.append("  [line ").append(token == null ? "?" : String.valueOf(line(token, statementRoots[slot])))
+            .append("] ").append(kind(stmt)).append('\n');
+      }
+    }
+    first = Math.max(0, assignments - assignmentNames.length);
+    if (assignments > first) {
+      dump.append("Last assignments:\n");
+      for (long i = first; i < assignments; i++) {
+        int slot = (int) i & mask;
+        Token name = assignmentNames[slot];
+        dump.append("  [line ").append(line(name, assignmentRoots[slot])).append("] ")
+            .append(name.lexeme).append(" = ")
+            .append(summary(assignmentValues[slot])).append('\n');
+      }
+    }
+    return dump.toString();
+  }
+
+  private int line(Token token, Stmt root) {
+    if (interner == null || root == null)
+      return token.line;
+    return interner.line(token, root);
+  }
+
+  private static String kind(Stmt stmt) {
+    if (stmt instanceof Stmt.Expression)
+      return "expression";
+    if (stmt instanceof Stmt.Var)
+      return "var";
+    if (stmt instanceof Stmt.Block)
+      return "block";
+    return "print";
+  }
+
+  private static String summary(Object value) {
+    if (value == null)
+      return "nil";
+    if (value instanceof Double)
+      return NumberFormatter.format((double) value);
+    if (value instanceof String) {
+      String string = (String) value;
+      if (string.length() > MAX_STRING)
+        return "\"" + string.substring(0, MAX_STRING) + "\"... (" + string.length() + " chars)";
+      return "\"" + string + "\"";
+    }
+    return value.toString();
+  }
+}
@@ -2,7 +2,7 @@ package org.lox;
 
 import java.util.List;
 
-abstract class Expr{
+abstract sealed class Expr{
   interface Visitor<R> {
     R visitAssignExpr(Assign expr);
     R visitBinaryExpr(Binary expr);
@@ -11,8 +11,12 @@ abstract class Expr{
     R visitLiteralExpr(Literal expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
+    R visitBinaryVarsExpr(BinaryVars expr);
+    R visitBinaryVarLiteralExpr(BinaryVarLiteral expr);
   }
-  static class Assign extends Expr {
+  // Written by TypeInference.
+  VariableKinds.Kind type = VariableKinds.Kind.UNKNOWN;
+  static final class Assign extends Expr {
     Assign(Token name, Expr value) {
       this.name = name;
       this.value = value;
@@ -26,7 +30,7 @@ abstract class Expr{
     final Token name;
     final Expr value;
   }
-  static class Binary extends Expr {
+  static final class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
       this.left = left;
       this.operator = operator;
@@ -42,7 +46,7 @@ abstract class Expr{
     final Token operator;
     final Expr right;
   }
-  static class Ternary extends Expr {
+  static final class Ternary extends Expr {
     Ternary(Expr first, Token operator1, Expr second, Token operator2, Expr last) {
       this.first = first;
       this.operator1 = operator1;
@@ -62,7 +66,7 @@ abstract class Expr{
     final Token operator2;
     final Expr last;
   }
-  static class Grouping extends Expr {
+  static final class Grouping extends Expr {
     Grouping(Expr expression) {
       this.expression = expression;
     }
@@ -74,7 +78,7 @@ abstract class Expr{
 
     final Expr expression;
   }
-  static class Literal extends Expr {
+  static final class Literal extends Expr {
     Literal(Object value) {
       this.value = value;
     }
@@ -86,7 +90,7 @@ abstract class Expr{
 
     final Object value;
   }
-  static class Unary extends Expr {
+  static final class Unary extends Expr {
     Unary(Token operator, Expr right) {
       this.operator = operator;
       this.right = right;
@@ -100,7 +104,7 @@ abstract class Expr{
     final Token operator;
     final Expr right;
   }
-  static class Variable extends Expr {
+  static final class Variable extends Expr {
     Variable(Token name) {
       this.name = name;
     }
@@ -112,6 +116,38 @@ abstract class Expr{
 
     final Token name;
   }
+  static final class BinaryVars extends Expr {
+    BinaryVars(Token left, Token operator, Token right) {
+      this.left = left;
+      this.operator = operator;
+      this.right = right;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitBinaryVarsExpr(this);
+    }
+
+    final Token left;
+    final Token operator;
+    final Token right;
+  }
+  static final class BinaryVarLiteral extends Expr {
+    BinaryVarLiteral(Token left, Token operator, Object value) {
+      this.left = left;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitBinaryVarLiteralExpr(this);
+    }
+
+    final Token left;
+    final Token operator;
+    final Object value;
+  }
 
   abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,90 @@
+package org.lox;
+
+/**
+ * Finds the leftmost token of a node, used to give a source line to errors
+ * raised on nodes that carry no token of their own. Returns null for
+ * subtrees made only of literals.
+ */
+class FirstToken implements Expr.Visitor<Token>, Stmt.Visitor<Token> {
+  private static final FirstToken INSTANCE = new FirstToken();
+
+  static Token of(Expr expr) {
+    return expr.accept(INSTANCE);
+  }
+
+  static Token of(Stmt stmt) {
+    return stmt.accept(INSTANCE);
+  }
+
+  @Override
+  public Token visitAssignExpr(Expr.Assign expr) {
+    return expr.name;
+  }
+
+  @Override
+  public Token visitBinaryExpr(Expr.Binary expr) {
+    Token left = of(expr.left);
+    return left != null ? left : expr.operator;
+  }
+
+  @Override
+  public Token visitTernaryExpr(Expr.Ternary expr) {
+    Token first = of(expr.first);
+    return first != null ? first : expr.operator1;
+  }
+
+  @Override
+  public Token visitGroupingExpr(Expr.Grouping expr) {
+    return of(expr.expression);
+  }
+
+  @Override
+  public Token visitLiteralExpr(Expr.Literal expr) {
+    return null;
+  }
+
+  @Override
+  public Token visitUnaryExpr(Expr.Unary expr) {
+    return expr.operator;
+  }
+
+  @Override
+  public Token visitVariableExpr(Expr.Variable expr) {
+    return expr.name;
+  }
+
+  @Override
+  public Token visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    return expr.left;
+  }
+
+  @Override
+  public Token visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    return expr.left;
+  }
+
+  @Override
+  public Token visitBlockStmt(Stmt.Block stmt) {
+    for (Stmt statement : stmt.statements) {
+      Token token = of(statement);
+      if (token != null)
+        return token;
+    }
+    return null;
+  }
+
+  @Override
+  public Token visitExpressionStmt(Stmt.Expression stmt) {
+    return of(stmt.expression);
+  }
+
+  @Override
+  public Token visitPrintStmt(Stmt.Print stmt) {
+    return stmt.keyword;
+  }
+
+  @Override
+  public Token visitVarStmt(Stmt.Var stmt) {
+    return stmt.name;
+  }
+}
@@ -0,0 +1,131 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the commonest small shapes so the interpreter runs them in fewer
+ * visits, without dispatching on and boxing between the nodes they
+ * replace:
+ *
+ *   (e)             e, since the tree already holds the grouping
+ *   a op b          BinaryVars, for two variable reads
+ *   a op 2          BinaryVarLiteral, for a variable and a literal
+ *
+ * The catalogue comes from the node shapes `Benchmark fusion` counts over
+ * the benchmark programs. Grouping(Binary) leads them, and the two fused
+ * binaries cover Binary(Variable, Variable) and Binary(Variable, Literal),
+ * which come next. A rewritten node raises the same errors on the same
+ * tokens as the nodes it replaces. It takes fewer interpreter steps,
+ * though, so a step budget stretches further. Fusing runs after
+ * DeadCodeEliminator, which only treats fused nodes conservatively, and
+ * before interning. DeadCodeEliminator drops groupings as well, so under
+ * --optimize only the fused binaries are left to do; the first rewrite is
+ * for trees that are fused on their own.
+ */
+class Fuser implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  enum Pattern {
+    GROUPING,
+    BINARY_VARS,
+    BINARY_VAR_LITERAL
+  }
+
+  private final int[] counts = new int[Pattern.values().length];
+
+  static List<Stmt> fuse(List<Stmt> statements) {
+    return new Fuser().rewrite(statements);
+  }
+
+  List<Stmt> rewrite(List<Stmt> statements) {
+    List<Stmt> result = new ArrayList<>(statements.size());
+    for (Stmt stmt : statements) {
+      result.add(stmt.accept(this));
+    }
+    return result;
+  }
+
+  /**
+   * Number of nodes fused into pattern so far.
+   */
+  int count(Pattern pattern) {
+    return counts[pattern.ordinal()];
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    return new Expr.Assign(expr.name, expr.value.accept(this));
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    if (expr.left instanceof Expr.Variable left) {
+      if (expr.right instanceof Expr.Variable right) {
+        counts[Pattern.BINARY_VARS.ordinal()]++;
+        return new Expr.BinaryVars(left.name, expr.operator, right.name);
+      }
+      if (expr.right instanceof Expr.Literal right) {
+        counts[Pattern.BINARY_VAR_LITERAL.ordinal()]++;
+        return new Expr.BinaryVarLiteral(left.name, expr.operator, right.value);
+      }
+    }
+    return new Expr.Binary(expr.left.accept(this), expr.operator, expr.right.accept(this));
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    return new Expr.Ternary(expr.first.accept(this), expr.operator1,
+        expr.second.accept(this), expr.operator2, expr.last.accept(this));
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    counts[Pattern.GROUPING.ordinal()]++;
+    return expr.expression.accept(this);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    return new Expr.Unary(expr.operator, expr.right.accept(this));
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    return expr;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    return new Stmt.Block(rewrite(stmt.statements));
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    return new Stmt.Expression(stmt.expression.accept(this));
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    return new Stmt.Print(stmt.keyword, stmt.expression.accept(this));
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+    return new Stmt.Var(stmt.name, initializer);
+  }
+}
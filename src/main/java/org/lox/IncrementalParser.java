@@ -0,0 +1,317 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a parsed program in step with edits to its source, for
+ * `jlox --watch`. The source is cut into segments at the end of every
+ * top-level declaration: a ';' or a closing '}' outside of any block,
+ * string or comment, the same cut points ParallelParser uses. Each segment
+ * is scanned and parsed on its own and keeps its statements.
+ *
+ * On an edit only the segments overlapping the text between the common
+ * prefix and the common suffix of the old and new source are cut, scanned
+ * and parsed again, up to the first cut point that lines up with an old
+ * one; every other segment is reused. When the edit added or removed
+ * lines, the reused segments after it are copied with their token lines
+ * shifted, which walks their trees but scans and parses nothing.
+ *
+ * If any segment has an error the whole source is scanned and parsed
+ * sequentially instead, so diagnostics are exactly those of Parser, and the
+ * next update starts over from a full segmented parse.
+ */
+class IncrementalParser {
+  private static final class Segment {
+    final int length;
+    // Newlines inside the segment.
+    final int lines;
+    // Whether the segment ends at a cut point; only the last one may not.
+    final boolean terminated;
+    final List<Stmt> statements;
+
+    Segment(int length, int lines, boolean terminated, List<Stmt> statements) {
+      this.length = length;
+      this.lines = lines;
+      this.terminated = terminated;
+      this.statements = statements;
+    }
+  }
+
+  private String source = "";
+  // Null until the first clean parse, and after one with errors.
+  private List<Segment> segments = null;
+  private int reparsed = 0;
+
+  /**
+   * Number of segments scanned and parsed by the last update().
+   */
+  int reparsed() {
+    return reparsed;
+  }
+
+  /**
+   * Number of segments the source was cut into by the last clean update().
+   */
+  int segments() {
+    return segments == null ? 0 : segments.size();
+  }
+
+  List<Stmt> update(String source, Diagnostics diagnostics) {
+    String previous = this.source;
+    this.source = source;
+    reparsed = 0;
+    List<Segment> updated = segments == null
+        ? cut(source, 0, 1, null, null, 0, 0, 0)
+        : update(previous, source);
+
+    if (updated == null) {
+      segments = null;
+      List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+      return new Parser(tokens, diagnostics).parse();
+    }
+
+    segments = updated;
+    List<Stmt> statements = new ArrayList<>();
+    for (Segment segment : updated) {
+      statements.addAll(segment.statements);
+    }
+    return statements;
+  }
+
+  // Returns the new segments, or null if one of them has an error.
+  private List<Segment> update(String previous, String source) {
+    int limit = Math.min(previous.length(), source.length());
+    int prefix = 0;
+    while (prefix < limit && previous.charAt(prefix) == source.charAt(prefix)) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < limit - prefix
+        && previous.charAt(previous.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix)) {
+      suffix++;
+    }
+
+    // Segments ending at a cut point inside the common prefix stay as they
+    // are, and cutting resumes where the first changed one starts.
+    int kept = 0;
+    int offset = 0;
+    int line = 1;
+    while (kept < segments.size()) {
+      Segment segment = segments.get(kept);
+      if (!segment.terminated || offset + segment.length > prefix)
+        break;
+      offset += segment.length;
+      line += segment.lines;
+      kept++;
+    }
+
+    int lineDelta = newlines(source, prefix, source.length() - suffix)
+        - newlines(previous, prefix, previous.length() - suffix);
+    List<Segment> result = cut(source, offset, line, segments.subList(kept, segments.size()),
+        previous, source.length() - suffix, source.length() - previous.length(), lineDelta);
+    if (result == null)
+      return null;
+    List<Segment> updated = new ArrayList<>(kept + result.size());
+    updated.addAll(segments.subList(0, kept));
+    updated.addAll(result);
+    return updated;
+  }
+
+  /**
+   * Cuts and parses source from offset on. Once a new cut point is followed
+   * by the same text as the end of one of the old segments, which follow
+   * offset in previous, the old segments after it are reused instead.
+   * suffixStart is where the common suffix starts in source, and delta and
+   * lineDelta are how far the edit moved it.
+   */
+  private List<Segment> cut(String source, int offset, int line, List<Segment> old,
+      String previous, int suffixStart, int delta, int lineDelta) {
+    List<Segment> result = new ArrayList<>();
+    Cutter cutter = new Cutter(source, offset, line);
+    int next = 0;
+    int oldEnd = offset;
+
+    while (cutter.position < source.length()) {
+      int from = cutter.position;
+      int fromLine = cutter.line;
+      cutter.next();
+
+      Diagnostics diagnostics = new Diagnostics();
+      List<Token> tokens = new Scanner(source, from, cutter.position, fromLine, diagnostics).scanTokens();
+      List<Stmt> statements = new Parser(tokens, diagnostics).parse();
+      if (diagnostics.hadError())
+        return null;
+      result.add(new Segment(cutter.position - from, cutter.line - fromLine, cutter.terminated, statements));
+      reparsed++;
+
+      if (old == null || !cutter.terminated)
+        continue;
+      // The rest of the source must be the same as after oldTo in the old
+      // one. Past suffixStart it is; before it, only the gap is compared.
+      int oldTo = cutter.position - delta;
+      int gap = suffixStart - cutter.position;
+      if (oldTo < offset || (gap > 0 && !source.regionMatches(cutter.position, previous, oldTo, gap)))
+        continue;
+      while (next < old.size() && oldEnd < oldTo) {
+        oldEnd += old.get(next++).length;
+      }
+      // offset itself is always a cut point in the old source.
+      if (oldEnd == oldTo && (next == 0 || old.get(next - 1).terminated)) {
+        for (Segment segment : old.subList(next, old.size())) {
+          result.add(lineDelta == 0 ? segment : shift(segment, lineDelta));
+        }
+        return result;
+      }
+    }
+    return result;
+  }
+
+  private static Segment shift(Segment segment, int lineDelta) {
+    LineShifter shifter = new LineShifter(lineDelta);
+    List<Stmt> statements = new ArrayList<>(segment.statements.size());
+    for (Stmt stmt : segment.statements) {
+      statements.add(stmt.accept(shifter));
+    }
+    return new Segment(segment.length, segment.lines, segment.terminated, statements);
+  }
+
+  private static int newlines(String source, int from, int to) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      if (source.charAt(i) == '\n')
+        count++;
+    }
+    return count;
+  }
+
+  /**
+   * Finds cut points, tracking only block depth and whether it is inside a
+   * string or comment. A stray '}' also ends a segment, whose parse then
+   * reports it.
+   */
+  private static final class Cutter {
+    private final String source;
+    int position;
+    int line;
+    boolean terminated;
+
+    Cutter(String source, int position, int line) {
+      this.source = source;
+      this.position = position;
+      this.line = line;
+    }
+
+    void next() {
+      int depth = 0;
+      boolean inString = false;
+      boolean inComment = false;
+      while (position < source.length()) {
+        char c = source.charAt(position++);
+        if (c == '\n') {
+          line++;
+          inComment = false;
+        } else if (inComment) {
+          continue;
+        } else if (c == '"') {
+          inString = !inString;
+        } else if (inString) {
+          continue;
+        } else if (c == '/' && position < source.length() && source.charAt(position) == '/') {
+          inComment = true;
+          position++;
+        } else if (c == '{') {
+          depth++;
+        } else if ((c == '}' && --depth <= 0) || (c == ';' && depth == 0)) {
+          terminated = true;
+          return;
+        }
+      }
+      terminated = false;
+    }
+  }
+
+  // Copies a tree with every token moved by delta lines.
+  private static final class LineShifter implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final int delta;
+
+    LineShifter(int delta) {
+      this.delta = delta;
+    }
+
+    private Token shift(Token token) {
+      return new Token(token.type, token.lexeme, token.literal, token.line + delta, token.symbol);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+      return new Expr.Assign(shift(expr.name), expr.value.accept(this));
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+      return new Expr.Binary(expr.left.accept(this), shift(expr.operator), expr.right.accept(this));
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+      return new Expr.Ternary(expr.first.accept(this), shift(expr.operator1),
+          expr.second.accept(this), shift(expr.operator2), expr.last.accept(this));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+      return new Expr.Grouping(expr.expression.accept(this));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+      return new Expr.Unary(shift(expr.operator), expr.right.accept(this));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+      return new Expr.Variable(shift(expr.name));
+    }
+
+    @Override
+    public Expr visitBinaryVarsExpr(Expr.BinaryVars expr) {
+      return new Expr.BinaryVars(shift(expr.left), shift(expr.operator), shift(expr.right));
+    }
+
+    @Override
+    public Expr visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+      return new Expr.BinaryVarLiteral(shift(expr.left), shift(expr.operator), expr.value);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+      List<Stmt> statements = new ArrayList<>(stmt.statements.size());
+      for (Stmt statement : stmt.statements) {
+        statements.add(statement.accept(this));
+      }
+      return new Stmt.Block(statements);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+      return new Stmt.Expression(stmt.expression.accept(this));
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+      return new Stmt.Print(shift(stmt.keyword), stmt.expression.accept(this));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+      Expr initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+      return new Stmt.Var(shift(stmt.name), initializer);
+    }
+  }
+}
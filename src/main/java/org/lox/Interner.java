@@ -0,0 +1,212 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lox.Token.TokenType;
+
+/**
+ * Hash-conses expressions: structurally identical literals, variable reads
+ * and operator nodes are replaced by one shared instance, so a script that
+ * repeats `(price * rate) + fee` a thousand times holds a single tree for
+ * it. Assignments and statements are rebuilt around the shared children but
+ * never shared themselves.
+ *
+ * Two subtrees are identical when their tokens line up with the same line
+ * offsets from the start of their top-level statements. A shared node keeps
+ * the tokens of its first occurrence, so a side table records the line each
+ * such token's statement started on, and relocate() moves a RuntimeError
+ * raised on one of them to the line of the statement that actually ran.
+ */
+class Interner implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private record LiteralKey(Object value) {
+  }
+
+  private record VariableKey(int symbol, int line) {
+  }
+
+  private record GroupingKey(Expr expression) {
+  }
+
+  private record UnaryKey(TokenType operator, int line, Expr right) {
+  }
+
+  private record BinaryKey(Expr left, TokenType operator, int line, Expr right) {
+  }
+
+  private record TernaryKey(Expr first, int line1, Expr second, int line2, Expr last) {
+  }
+
+  private final Map<Object, Expr> canonical = new HashMap<>();
+  // The line the top-level statement of each token of a shared node
+  // started on.
+  private final Map<Token, Integer> tokenBases = new IdentityHashMap<>();
+  private final Map<Stmt, Integer> statementBases = new IdentityHashMap<>();
+  // Line of the top-level statement being interned.
+  private int base;
+  private long created = 0;
+  private long reused = 0;
+
+  List<Stmt> intern(List<Stmt> statements) {
+    List<Stmt> result = new ArrayList<>(statements.size());
+    for (Stmt stmt : statements) {
+      Token first = FirstToken.of(stmt);
+      base = first == null ? 0 : first.line;
+      Stmt interned = stmt.accept(this);
+      statementBases.put(interned, base);
+      result.add(interned);
+    }
+    return result;
+  }
+
+  /**
+   * Number of expression nodes that were kept as canonical instances.
+   */
+  long created() {
+    return created;
+  }
+
+  /**
+   * Number of expression nodes replaced by a canonical instance.
+   */
+  long reused() {
+    return reused;
+  }
+
+  /**
+   * Returns error with its token moved to the line it has in statement, a
+   * top-level statement returned by intern().
+   */
+  RuntimeError relocate(RuntimeError error, Stmt statement) {
+    Token token = error.token;
+    if (token == null)
+      return error;
+    int line = line(token, statement);
+    if (line == token.line)
+      return error;
+
+    Token moved = new Token(token.type, token.lexeme, token.literal, line, token.symbol);
+    if (error instanceof BudgetExceededError)
+      return new BudgetExceededError(moved, error.getMessage());
+    return new RuntimeError(moved, error.getMessage());
+  }
+
+  /**
+   * The line token has in statement, a top-level statement returned by
+   * intern(), which differs from token.line when token is in a shared node.
+   */
+  int line(Token token, Stmt statement) {
+    Integer tokenBase = tokenBases.get(token);
+    Integer statementBase = statementBases.get(statement);
+    if (tokenBase == null || statementBase == null)
+      return token.line;
+    return token.line - tokenBase + statementBase;
+  }
+
+  private Expr share(Object key, Expr expr, Token... tokens) {
+    Expr existing = canonical.get(key);
+    if (existing != null) {
+      reused++;
+      return existing;
+    }
+    canonical.put(key, expr);
+    for (Token token : tokens) {
+      tokenBases.put(token, base);
+    }
+    created++;
+    return expr;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    Expr value = expr.value.accept(this);
+    return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr left = expr.left.accept(this);
+    Expr right = expr.right.accept(this);
+    BinaryKey key = new BinaryKey(left, expr.operator.type, expr.operator.line - base, right);
+    Expr node = left == expr.left && right == expr.right ? expr : new Expr.Binary(left, expr.operator, right);
+    return share(key, node, expr.operator);
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    Expr first = expr.first.accept(this);
+    Expr second = expr.second.accept(this);
+    Expr last = expr.last.accept(this);
+    TernaryKey key = new TernaryKey(first, expr.operator1.line - base,
+        second, expr.operator2.line - base, last);
+    Expr node = first == expr.first && second == expr.second && last == expr.last
+        ? expr
+        : new Expr.Ternary(first, expr.operator1, second, expr.operator2, last);
+    return share(key, node, expr.operator1, expr.operator2);
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    Expr expression = expr.expression.accept(this);
+    Expr node = expression == expr.expression ? expr : new Expr.Grouping(expression);
+    return share(new GroupingKey(expression), node);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return share(new LiteralKey(expr.value), expr);
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    Expr right = expr.right.accept(this);
+    UnaryKey key = new UnaryKey(expr.operator.type, expr.operator.line - base, right);
+    Expr node = right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+    return share(key, node, expr.operator);
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return share(new VariableKey(expr.name.symbol, expr.name.line - base), expr, expr.name);
+  }
+
+  // Fused nodes are never shared themselves, only their children.
+
+  @Override
+  public Expr visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    return expr;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    List<Stmt> statements = new ArrayList<>(stmt.statements.size());
+    for (Stmt statement : stmt.statements) {
+      statements.add(statement.accept(this));
+    }
+    return new Stmt.Block(statements);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    return new Stmt.Expression(stmt.expression.accept(this));
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    return new Stmt.Print(stmt.keyword, stmt.expression.accept(this));
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+    return new Stmt.Var(stmt.name, initializer);
+  }
+}
@@ -1,5 +1,6 @@
 package org.lox;
 
+import java.io.PrintStream;
 import java.util.List;
 
 import org.lox.Expr.Assign;
@@ -11,22 +12,218 @@ import org.lox.Expr.Unary;
 import org.lox.Expr.Variable;
 import org.lox.Stmt.Block;
 import org.lox.Stmt.Var;
+import org.lox.Token.TokenType;
+import org.lox.VariableKinds.Kind;
+
+import static org.lox.Values.checkNumberOperand;
+import static org.lox.Values.checkNumberOperands;
+import static org.lox.Values.isEqual;
+import static org.lox.Values.isTruthy;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+  // Steps between two looks at the clock when a time budget is set.
+  private static final long CLOCK_INTERVAL = 1024;
+
+  private Environment globals;
+  private Environment environment;
+  private final Diagnostics diagnostics;
+  private final PrintStream out;
+  private final boolean switchDispatch;
+
+  private Budget budget = Budget.UNLIMITED;
+  private long steps = 0;
+  // The step count at which checkBudget() runs next, so the hot path is a
+  // single compare whatever limits are set.
+  private long nextCheck = Long.MAX_VALUE;
+  private long deadline = 0;
+  private int depth = 0;
+  private long stringBytes = 0;
+  // Null unless line coverage is being collected.
+  private Coverage coverage;
+  // Set when running statements that went through an Interner.
+  private Interner interner;
+  // Recorded as it runs, so a runtime error can be reported with what led
+  // up to it. Null only when turned off.
+  private ExecutionTrace trace = new ExecutionTrace();
+
+  Interpreter(Diagnostics diagnostics) {
+    this(diagnostics, false);
+  }
+
+  /**
+   * Runs against the given globals, typically a fork of a snapshot taken
+   * from another interpreter.
+   */
+  Interpreter(Diagnostics diagnostics, Environment globals) {
+    this(diagnostics, false, globals, System.out);
+  }
+
+  /**
+   * Runs against the given globals and prints to out instead of stdout.
+   */
+  Interpreter(Diagnostics diagnostics, Environment globals, PrintStream out) {
+    this(diagnostics, false, globals, out);
+  }
+
+  /**
+   * With switchDispatch set, nodes are dispatched by testing their exact
+   * class against the sealed Expr/Stmt hierarchies instead of calling
+   * accept(), which keeps the call sites monomorphic.
+   */
+  Interpreter(Diagnostics diagnostics, boolean switchDispatch) {
+    this(diagnostics, switchDispatch, new Environment(), System.out);
+  }
+
+  private Interpreter(Diagnostics diagnostics, boolean switchDispatch, Environment globals, PrintStream out) {
+    this.diagnostics = diagnostics;
+    this.out = out;
+    this.switchDispatch = switchDispatch;
+    this.globals = globals;
+    this.environment = globals;
+  }
+
+  /**
+   * Freezes the current globals and returns them, so that other
+   * interpreters can start from them through Environment.fork(). This
+   * interpreter carries on in a fork of its own.
+   */
+  Environment snapshotGlobals() {
+    Environment snapshot = globals;
+    globals = snapshot.fork();
+    if (environment == snapshot)
+      environment = globals;
+    return snapshot;
+  }
+
+  /**
+   * Limits every run from now on to budget. Each call to interpret() gets
+   * the whole budget afresh.
+   */
+  void setBudget(Budget budget) {
+    this.budget = budget;
+    startRun();
+  }
+
+  /**
+   * Starts counting steps, string bytes and time from zero. interpret()
+   * calls this itself; callers that hand over one program in pieces call
+   * it once and then resume() for each piece.
+   */
+  void startRun() {
+    steps = 0;
+    stringBytes = 0;
+    deadline = budget.isTimed() ? System.nanoTime() + budget.maxNanos : 0;
+    scheduleCheck();
+  }
+
+  /**
+   * Number of expressions and statements evaluated since the current run
+   * started.
+   */
+  long steps() {
+    return steps;
+  }
+
+  /**
+   * Records the lines this interpreter runs from now on in coverage.
+   */
+  void setCoverage(Coverage coverage) {
+    this.coverage = coverage;
+  }
 
-  private Environment environment = new Environment();
+  /**
+   * Relocates runtime errors through interner, which the statements run
+   * from now on have been interned with.
+   */
+  void setInterner(Interner interner) {
+    this.interner = interner;
+    if (trace != null)
+      trace.setInterner(interner);
+  }
+
+  /**
+   * Records what this interpreter runs from now on in trace instead, or
+   * nothing if trace is null.
+   */
+  void setTrace(ExecutionTrace trace) {
+    this.trace = trace;
+    if (trace != null)
+      trace.setInterner(interner);
+  }
+
+  /**
+   * The statements and assignments leading up to the last one run, or null
+   * if tracing is off.
+   */
+  ExecutionTrace trace() {
+    return trace;
+  }
+
+  private void scheduleCheck() {
+    long limit = budget.maxSteps == Long.MAX_VALUE ? Long.MAX_VALUE : budget.maxSteps + 1;
+    if (budget.isTimed())
+      limit = Math.min(limit, steps + CLOCK_INTERVAL);
+    nextCheck = limit;
+  }
+
+  // Returns why the budget is exhausted, or null if it is not.
+  private String checkBudget() {
+    if (steps > budget.maxSteps)
+      return "Step budget of " + budget.maxSteps + " exceeded.";
+    if (budget.isTimed() && System.nanoTime() - deadline > 0)
+      return "Time budget of " + budget.maxNanos / 1_000_000 + "ms exceeded.";
+    scheduleCheck();
+    return null;
+  }
 
   void interpret(List<Stmt> stataments, boolean repl) {
+    interpret(stataments, repl, diagnostics);
+  }
+
+  void interpret(List<Stmt> stataments, boolean repl, Diagnostics diagnostics) {
+    startRun();
+    resume(stataments, repl, diagnostics);
+  }
+
+  /**
+   * Runs stataments as part of the current run, within what is left of
+   * its budget.
+   */
+  void resume(List<Stmt> stataments, boolean repl, Diagnostics diagnostics) {
+    LoxEvents.Interpret event = new LoxEvents.Interpret();
+    event.begin();
+    long start = steps;
+    if (coverage != null)
+      coverage.addExecutable(stataments);
+    Stmt current = null;
     try {
       for (Stmt stmt : stataments) {
+        current = stmt;
+        if (trace != null)
+          trace.root(stmt);
+        LoxEvents.SlowStatement slow = new LoxEvents.SlowStatement();
+        slow.begin();
         if (repl && stmt instanceof Stmt.Expression) {
+          if (trace != null)
+            trace.statement(stmt);
           Object value = evaluate(((Stmt.Expression)stmt).expression);
-          System.out.println(stringify(value));
+          out.println(stringify(value));
         } else
           execute(stmt);
+        slow.end();
+        if (slow.shouldCommit()) {
+          Token token = FirstToken.of(stmt);
+          slow.line = token == null ? 0 : token.line;
+          slow.kind = stmt.getClass().getSimpleName();
+          slow.commit();
+        }
+        event.statements++;
       }
     } catch (RuntimeError e) {
-      Lox.runtimeError(e);
+      diagnostics.runtimeError(interner == null ? e : interner.relocate(e, current));
+    } finally {
+      event.nodes = steps - start;
+      event.commit();
     }
   }
 
@@ -36,35 +233,84 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitBinaryExpr(Binary expr) {
+    if (coverage != null)
+      coverage.mark(expr.operator.line);
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
-    switch (expr.operator.type) {
+    return binary(expr.operator, expr.type, left, right);
+  }
+
+  // A node TypeInference tagged NUMBER, STRING or BOOL has passed its
+  // operand checks already. Equality has no checks to skip.
+  private Object binary(Token operator, Kind type, Object left, Object right) {
+    if (type == Kind.NUMBER || (type == Kind.BOOL
+        && operator.type != TokenType.EQUAL_EQUAL && operator.type != TokenType.BANG_EQUAL))
+      return numeric(operator, (double) left, (double) right);
+    if (type == Kind.STRING)
+      return concatenate(operator, (String) left, (String) right);
+    return binary(operator, left, right);
+  }
+
+  private Object numeric(Token operator, double left, double right) {
+    switch (operator.type) {
       case MINUS:
-        checkNumberOperand(expr.operator, left, right);
+        return left - right;
+      case PLUS:
+        return left + right;
+      case SLASH:
+        return left / right;
+      case STAR:
+        return left * right;
+      case GREATER:
+        return left > right;
+      case GREATER_EQUAL:
+        return left >= right;
+      case LESS:
+        return left < right;
+      case LESS_EQUAL:
+        return left <= right;
+      default:
+        break;
+    }
+
+    throw new UnsupportedOperationException("Unreachable code reached!");
+  }
+
+  private String concatenate(Token operator, String left, String right) {
+    stringBytes += (long) (left.length() + right.length()) * Character.BYTES;
+    if (stringBytes > budget.maxStringBytes)
+      throw new BudgetExceededError(operator,
+          "String budget of " + budget.maxStringBytes + " bytes exceeded.");
+    return left + right;
+  }
+
+  private Object binary(Token operator, Object left, Object right) {
+    switch (operator.type) {
+      case MINUS:
+        checkNumberOperands(operator, left, right);
         return (double) left - (double) right;
       case PLUS:
-        if (left instanceof Double && right instanceof Double)
-          return (double) left + (double) right;
+        // Strings count against the budget.
         if (left instanceof String && right instanceof String)
-          return (String) left + (String) right;
-        throw new RuntimeError(expr.operator, "Operands can be either numbers or strings.");
+          return concatenate(operator, (String) left, (String) right);
+        return Values.plus(operator, left, right);
       case SLASH:
-        checkNumberOperand(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left / (double) right;
       case STAR:
-        checkNumberOperand(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left * (double) right;
       case GREATER:
-        checkNumberOperand(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left > (double) right;
       case GREATER_EQUAL:
-        checkNumberOperand(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left >= (double) right;
       case LESS:
-        checkNumberOperand(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left < (double) right;
       case LESS_EQUAL:
-        checkNumberOperand(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double) left <= (double) right;
       case EQUAL_EQUAL:
         return isEqual(left, right);
@@ -79,9 +325,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitTernaryExpr(Ternary expr) {
+    if (coverage != null)
+      coverage.mark(expr.operator1.line);
     if (isTruthy(evaluate(expr.first))) {
       return evaluate(expr.second);
     }
+    if (coverage != null)
+      coverage.mark(expr.operator2.line);
     return evaluate(expr.last);
   }
 
@@ -97,11 +347,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitUnaryExpr(Unary expr) {
+    if (coverage != null)
+      coverage.mark(expr.operator.line);
     Object right = evaluate(expr.right);
 
     switch (expr.operator.type) {
       case MINUS:
-        checkNumberOperand(expr.operator, right);
+        if (expr.type != Kind.NUMBER)
+          checkNumberOperand(expr.operator, right);
         return -(double) right;
       case BANG:
         return !isTruthy(right);
@@ -113,12 +366,72 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   }
 
   private Object evaluate(Expr expr) {
+    if (++steps >= nextCheck) {
+      String exceeded = checkBudget();
+      if (exceeded != null)
+        throw new BudgetExceededError(FirstToken.of(expr), exceeded);
+    }
+    if (switchDispatch)
+      return dispatch(expr);
     return expr.accept(this);
   }
   
   private Void execute(Stmt stmt) {
-    stmt.accept(this);
-    return null;
+    if (++steps >= nextCheck) {
+      String exceeded = checkBudget();
+      if (exceeded != null)
+        throw new BudgetExceededError(FirstToken.of(stmt), exceeded);
+    }
+    if (trace != null)
+      trace.statement(stmt);
+    try {
+      if (switchDispatch)
+        return dispatch(stmt);
+      stmt.accept(this);
+      return null;
+    } catch (BudgetExceededError e) {
+      // Raised on a literal; blame the statement it belongs to instead.
+      if (e.token == null)
+        throw new BudgetExceededError(FirstToken.of(stmt), e.getMessage());
+      throw e;
+    }
+  }
+
+  // Java 17 only has pattern matching for instanceof; every leaf class is
+  // final, so each test below compiles to a single class compare. Ordered by
+  // how often the nodes show up in typical scripts.
+  private Object dispatch(Expr expr) {
+    if (expr instanceof Literal literal)
+      return visitLiteralExpr(literal);
+    if (expr instanceof Variable variable)
+      return visitVariableExpr(variable);
+    if (expr instanceof Binary binary)
+      return visitBinaryExpr(binary);
+    if (expr instanceof Grouping grouping)
+      return visitGroupingExpr(grouping);
+    if (expr instanceof Unary unary)
+      return visitUnaryExpr(unary);
+    if (expr instanceof Assign assign)
+      return visitAssignExpr(assign);
+    if (expr instanceof Ternary ternary)
+      return visitTernaryExpr(ternary);
+    if (expr instanceof Expr.BinaryVarLiteral binary)
+      return visitBinaryVarLiteralExpr(binary);
+    if (expr instanceof Expr.BinaryVars binary)
+      return visitBinaryVarsExpr(binary);
+    throw new UnsupportedOperationException("Unreachable code reached!");
+  }
+
+  private Void dispatch(Stmt stmt) {
+    if (stmt instanceof Stmt.Expression expression)
+      return visitExpressionStmt(expression);
+    if (stmt instanceof Var var)
+      return visitVarStmt(var);
+    if (stmt instanceof Stmt.Print print)
+      return visitPrintStmt(print);
+    if (stmt instanceof Block block)
+      return visitBlockStmt(block);
+    throw new UnsupportedOperationException("Unreachable code reached!");
   }
 
   @Override
@@ -129,86 +442,90 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitPrintStmt(Stmt.Print stmt) {
+    if (coverage != null)
+      coverage.mark(stmt.keyword.line);
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    out.println(stringify(value));
     return null;
   }
 
-  private boolean isTruthy(Object object) {
-    if (object == null)
-      return false;
-    if (object instanceof Boolean)
-      return (boolean) object;
-    return true;
-  }
-
-  private boolean isEqual(Object lhs, Object rhs) {
-    if (lhs == null && rhs == null)
-      return true;
-    if (lhs == null)
-      return false;
-    if (rhs == null)
-      return false;
-
-    return lhs.equals(rhs);
-  }
-
-  private void checkNumberOperand(Token operator, Object operand) {
-    if (operand instanceof Double)
-      return;
-    throw new RuntimeError(operator, "Operand must be a number.");
-  }
-
-  private void checkNumberOperand(Token operator, Object left, Object right) {
-    if (left instanceof Double && right instanceof Double)
-      return;
-    throw new RuntimeError(operator, "Operands must be numbers.");
-  }
-
   private String stringify(Object object) {
     if (object == null)
       return "nil";
 
-    if (object instanceof Double) {
-      String text = object.toString();
-      if (text.endsWith(".0"))
-        text = text.substring(0, text.length() - 2);
-      return text;
-    }
+    if (object instanceof Double)
+      return NumberFormatter.format((double) object);
 
     return object.toString();
   }
 
   @Override
   public Void visitVarStmt(Var stmt) {
+    if (coverage != null)
+      coverage.mark(stmt.name.line);
     Object value = null;
     if (stmt.initializer != null) {
       value = evaluate(stmt.initializer);
     }
-    environment.define(stmt.name.lexeme, value);
+    environment.define(stmt.name.symbol, value);
+    if (trace != null)
+      trace.assignment(stmt.name, value);
     return null;
   }
 
   @Override
   public Object visitVariableExpr(Variable expr) {
+    if (coverage != null)
+      coverage.mark(expr.name.line);
     return environment.get(expr.name);
   }
 
   @Override
   public Object visitAssignExpr(Assign expr) {
+    if (coverage != null)
+      coverage.mark(expr.name.line);
     Object value = evaluate(expr.value);
     environment.assign(expr.name, value);
+    if (trace != null)
+      trace.assignment(expr.name, value);
     return value;
   }
 
+  // The fused nodes below do in one visit what the nodes they replace do in
+  // several, raising the same errors on the same tokens.
+
+  @Override
+  public Object visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    if (coverage != null) {
+      coverage.mark(expr.left.line);
+      coverage.mark(expr.operator.line);
+      coverage.mark(expr.right.line);
+    }
+    Object left = environment.get(expr.left);
+    return binary(expr.operator, expr.type, left, environment.get(expr.right));
+  }
+
+  @Override
+  public Object visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    if (coverage != null) {
+      coverage.mark(expr.left.line);
+      coverage.mark(expr.operator.line);
+    }
+    return binary(expr.operator, expr.type, environment.get(expr.left), expr.value);
+  }
+
   @Override
   public Void visitBlockStmt(Block stmt) {
+    if (depth >= budget.maxDepth)
+      throw new BudgetExceededError(FirstToken.of(stmt),
+          "Depth budget of " + budget.maxDepth + " nested blocks exceeded.");
     executeBlock(stmt.statements, new Environment(environment));
     return null;
   }
 
   private void executeBlock(List<Stmt> statements, Environment environment) {
     Environment previous = this.environment;
+    depth++;
     try {
       this.environment = environment;
       for (Stmt statement : statements) {
@@ -216,6 +533,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       }
     } finally {
       this.environment = previous;
+      depth--;
     }
   }
 }
@@ -3,37 +3,344 @@ package org.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.lox.Token.TokenType;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hasRuntimeError = false;
+    private static final Diagnostics diagnostics = new Diagnostics();
+    // Set up once the options are known, since --cache records stdout and
+    // stderr by replacing them.
+    private static DiagnosticReporter reporter;
+    private static Interpreter interpreter;
+    private static boolean pipeline = false;
+    private static boolean eager = false;
+    private static boolean parallel = false;
+    private static boolean optimize = false;
+    private static String coverage = null;
+    private static boolean watch = false;
+    private static boolean concurrent = false;
+    private static Interner interner = null;
+    private static Budget budget = Budget.UNLIMITED;
+    private static ResultCache cache = null;
+    // What the run prints, while recording it for the cache.
+    private static ResultCache.Tee out = null;
+    private static ResultCache.Tee err = null;
 
     //private static List<String> commandHistory = new ArrayList<>();
     //private static int commandHistoryOffset = 0;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        String script = null;
+        String serve = null;
+        String cacheDirectory = null;
+        boolean noCache = false;
+        String snapshotAfter = null;
+        String snapshotOutput = null;
+        String restore = null;
+        Long maxSteps = null;
+        Long maxMillis = null;
+        Long maxDepth = null;
+        Long maxStringBytes = null;
+        Long maxRequest = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--serve") && i + 1 < args.length) {
+                serve = args[++i];
+            } else if (arg.equals("--pipeline")) {
+                pipeline = true;
+            } else if (arg.equals("--pipeline-eager")) {
+                pipeline = true;
+                eager = true;
+            } else if (arg.equals("--parallel")) {
+                parallel = true;
+            } else if (arg.equals("--optimize")) {
+                optimize = true;
+            } else if (arg.equals("--intern")) {
+                interner = new Interner();
+            } else if (arg.equals("--concurrent")) {
+                concurrent = true;
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.equals("--coverage") && i + 1 < args.length) {
+                coverage = args[++i];
+            } else if (arg.equals("--cache") && i + 1 < args.length) {
+                cacheDirectory = args[++i];
+            } else if (arg.equals("--no-cache")) {
+                noCache = true;
+            } else if (arg.equals("--snapshot-after") && i + 1 < args.length) {
+                snapshotAfter = args[++i];
+            } else if (arg.equals("-o") && i + 1 < args.length) {
+                snapshotOutput = args[++i];
+            } else if (arg.equals("--restore") && i + 1 < args.length) {
+                restore = args[++i];
+            } else if (arg.equals("--max-steps") && i + 1 < args.length) {
+                maxSteps = limit(args[++i], Long.MAX_VALUE);
+            } else if (arg.equals("--max-millis") && i + 1 < args.length) {
+                maxMillis = limit(args[++i], Long.MAX_VALUE / 1_000_000);
+            } else if (arg.equals("--max-depth") && i + 1 < args.length) {
+                maxDepth = limit(args[++i], Integer.MAX_VALUE);
+            } else if (arg.equals("--max-string-bytes") && i + 1 < args.length) {
+                maxStringBytes = limit(args[++i], Long.MAX_VALUE);
+            } else if (arg.equals("--max-request-bytes") && i + 1 < args.length) {
+                maxRequest = limit(args[++i], Integer.MAX_VALUE);
+            } else if (arg.startsWith("--") || script != null) {
+                usage();
+            } else {
+                script = arg;
+            }
+        }
+
+        if (pipeline && parallel) usage();
+        // The eager pipeline runs each statement as soon as it is parsed,
+        // before there is a whole program to optimize.
+        if (eager && optimize) usage();
+        if (coverage != null && script == null) usage();
+        // Lines the optimizer removed would drop out of the report instead
+        // of showing as never run.
+        if (coverage != null && optimize) usage();
+        if (watch && (script == null || pipeline || parallel || coverage != null)) usage();
+        if (concurrent && (script == null || eager || watch || coverage != null)) usage();
+        // Shared nodes carry the lines of their first occurrence.
+        if (interner != null && (eager || watch || concurrent || coverage != null)) usage();
+        // Only whole script runs are cached; coverage has a file to write.
+        if (cacheDirectory != null && ((script == null && serve == null) || watch || coverage != null)) usage();
+        // The prelude takes the place of the script.
+        if ((snapshotAfter == null) != (snapshotOutput == null)) usage();
+        if (snapshotAfter != null && (script != null || serve != null || coverage != null)) usage();
+        // Restored globals are plain Environments, and a cached result would
+        // not depend on the snapshot.
+        if ((snapshotAfter != null || restore != null)
+            && (serve != null || watch || concurrent || cacheDirectory != null)) usage();
+        // Concurrent statements run on interpreters of the executor's own.
+        if (concurrent && (maxSteps != null || maxMillis != null || maxDepth != null || maxStringBytes != null))
+            usage();
+        if (maxRequest != null && serve == null) usage();
+
+        // Limits given override those of the server's default budget.
+        if (serve != null) budget = Server.DEFAULT_BUDGET;
+        if (maxSteps != null) budget = budget.withMaxSteps(maxSteps);
+        if (maxMillis != null) budget = budget.withMaxNanos(maxMillis * 1_000_000);
+        if (maxDepth != null) budget = budget.withMaxDepth(maxDepth.intValue());
+        if (maxStringBytes != null) budget = budget.withMaxStringBytes(maxStringBytes);
+
+        // --no-cache wins, so an alias can always pass --cache.
+        if (cacheDirectory != null && !noCache) {
+            cache = new ResultCache(Paths.get(cacheDirectory));
+            if (script != null) {
+                out = new ResultCache.Tee(System.out);
+                err = new ResultCache.Tee(System.err);
+                System.setOut(new PrintStream(out, true));
+                System.setErr(new PrintStream(err, true));
+            }
+        }
+        reporter = new DiagnosticReporter(System.err);
+        interpreter = restore == null
+            ? new Interpreter(diagnostics)
+            : new Interpreter(diagnostics, Snapshot.read(Paths.get(restore)));
+        if (interner != null) interpreter.setInterner(interner);
+        interpreter.setBudget(budget);
+
+        if (serve != null) {
+            if (script != null) usage();
+            Server.serve(serve, cache, budget,
+                maxRequest == null ? Server.DEFAULT_MAX_REQUEST : maxRequest.intValue());
+        } else if (snapshotAfter != null) {
+            snapshot(snapshotAfter, snapshotOutput);
+        } else if (watch) {
+            watchFile(script);
+        } else if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--pipeline | --parallel] [--optimize] [--intern]");
+        System.out.println("            [--cache <dir> [--no-cache]] [--restore <snapshot>] [script]");
+        System.out.println("       jlox --pipeline-eager [--cache <dir> [--no-cache]] [--restore <snapshot>] [script]");
+        System.out.println("       jlox [--pipeline | --pipeline-eager | --parallel] --coverage <lcov file>");
+        System.out.println("            [--restore <snapshot>] script");
+        System.out.println("       jlox [--pipeline | --parallel] [--optimize] [--cache <dir> [--no-cache]]");
+        System.out.println("            --concurrent script");
+        System.out.println("       jlox --watch [--optimize] script");
+        System.out.println("       jlox [--cache <dir> [--no-cache]] [--max-request-bytes <n>]");
+        System.out.println("            --serve <port | socket path>");
+        System.out.println("       jlox [--pipeline | --parallel] [--optimize] [--restore <snapshot>]");
+        System.out.println("            --snapshot-after <prelude> -o <snapshot>");
+        System.out.println("Any but --concurrent also takes [--max-steps <n>] [--max-millis <ms>]");
+        System.out.println("            [--max-depth <blocks>] [--max-string-bytes <n>]");
+        System.exit(64);
+    }
+
+    // A budget limit between 0 and max.
+    private static long limit(String value, long max) {
+        try {
+            long limit = Long.parseLong(value);
+            if (limit >= 0 && limit <= max) return limit;
+        } catch (NumberFormatException e) {
+            // Falls through to the usage message.
+        }
+        usage();
+        return 0;
+    }
+
     private static void runFile(String path) throws IOException {
         byte[] script = Files.readAllBytes(Paths.get(path));
-        run(new String(script, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
-        if (hasRuntimeError) System.exit(70);
+        String source = new String(script, Charset.defaultCharset());
+        String key = null;
+        if (cache != null) {
+            key = ResultCache.key(source, cacheOptions());
+            ResultCache.Result hit = cache.get(key);
+            if (hit != null) {
+                replay(hit);
+                return;
+            }
+        }
+        Coverage lines = null;
+        if (coverage != null) {
+            lines = new Coverage(path);
+            interpreter.setCoverage(lines);
+        }
+        if (pipeline) {
+            runPipelined(source);
+        } else {
+            run(source);
+        }
+        // Hits add up across runs, so a test suite can share one file.
+        if (lines != null && !diagnostics.hadError()) lines.writeLcov(Paths.get(coverage));
+        int code = diagnostics.hadError() ? 65 : diagnostics.hadRuntimeError() ? 70 : 0;
+        if (cache != null && ResultCache.cacheable(diagnostics)) {
+            System.out.flush();
+            System.err.flush();
+            cache.put(key, new ResultCache.Result(out.copy(), err.copy(), code));
+        }
+        if (code != 0) System.exit(code);
+    }
+
+    /**
+     * Runs the prelude, then saves the globals it leaves to a snapshot that
+     * --restore starts from. Nothing is saved if the prelude fails.
+     */
+    private static void snapshot(String prelude, String output) throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get(prelude)), Charset.defaultCharset());
+        if (pipeline) {
+            runPipelined(source);
+        } else {
+            run(source);
+        }
+        if (diagnostics.hadError()) System.exit(65);
+        if (diagnostics.hadRuntimeError()) System.exit(70);
+        Snapshot.write(interpreter.snapshotGlobals(), Paths.get(output));
+    }
+
+    /**
+     * Every option that can change what a run prints or how it exits, so a
+     * run is only answered from the cache by one made the same way. The
+     * eager pipeline runs the statements before a syntax error, --optimize
+     * warns, --concurrent dumps no trace and a budget can cut the run
+     * short. The others are in for good measure: a new option that changes
+     * output is easier to forget than one that does not.
+     */
+    private static String cacheOptions() {
+        StringBuilder options = new StringBuilder();
+        if (pipeline) options.append(eager ? "pipeline-eager " : "pipeline ");
+        if (parallel) options.append("parallel ");
+        if (optimize) options.append("optimize ");
+        if (interner != null) options.append("intern ");
+        if (concurrent) options.append("concurrent ");
+        return options.append(budget).toString();
+    }
+
+    // Prints what a cached run printed and exits the way it did.
+    private static void replay(ResultCache.Result result) {
+        System.out.write(result.out(), 0, result.out().length);
+        System.out.flush();
+        System.err.write(result.err(), 0, result.err().length);
+        System.err.flush();
+        if (result.code() != 0) System.exit(result.code());
+    }
+
+    /**
+     * Runs the script, then again every time it is saved, with fresh
+     * globals each time. Only the declarations an edit touched are scanned
+     * and parsed again.
+     */
+    private static void watchFile(String path) throws IOException {
+        Path file = Paths.get(path).toAbsolutePath();
+        IncrementalParser parser = new IncrementalParser();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            // Editors often save by replacing the file, so watch its directory.
+            file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            String previous = null;
+            for (;;) {
+                try {
+                    String source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+                    if (!source.equals(previous)) {
+                        runWatched(parser, source);
+                        previous = source;
+                    }
+                } catch (NoSuchFileException e) {
+                    // Caught between removing and recreating the file.
+                }
+                awaitChange(watcher, file.getFileName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Returns once the file has changed and then been left alone for a
+    // moment, so a save that truncates and then writes runs only once.
+    private static void awaitChange(WatchService watcher, Path name) throws InterruptedException {
+        boolean changed = false;
+        for (;;) {
+            WatchKey key = changed ? watcher.poll(50, TimeUnit.MILLISECONDS) : watcher.take();
+            if (key == null) return;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (name.equals(event.context())) changed = true;
+            }
+            key.reset();
+        }
+    }
+
+    private static void runWatched(IncrementalParser parser, String source) {
+        Diagnostics diagnostics = new Diagnostics();
+        Interpreter interpreter = new Interpreter(diagnostics);
+        interpreter.setBudget(budget);
+        try {
+            long start = System.nanoTime();
+            List<Stmt> statements = parser.update(source, diagnostics);
+            double millis = (System.nanoTime() - start) / 1e6;
+            // Scripts with errors are always parsed whole.
+            if (!diagnostics.hadError()) {
+                System.err.printf("[watch] parsed %d of %d declarations in %.3f ms%n",
+                    parser.reparsed(), parser.segments(), millis);
+            } else {
+                System.err.printf("[watch] parsed the whole script in %.3f ms%n", millis);
+            }
+            if (diagnostics.hadError()) return;
+            if (optimize) {
+                statements = optimize(statements);
+                TypeInference.infer(statements, diagnostics);
+            }
+            interpreter.interpret(statements, true);
+        } finally {
+            reporter.report(diagnostics, interpreter.trace());
+        }
     }
 
     private static void runPrompt() throws IOException {
@@ -55,41 +362,60 @@ public class Lox {
             //System.out.println("> " + line);
             run(line);
             //commandHistory.add(line);
-            hadError = false;
+            diagnostics.clear();
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        if (hadError) return;
-        interpreter.interpret(statements, true);
-        if (hasRuntimeError) return;
+    private static void runPipelined(String source) {
+        try {
+            if (eager) {
+                Pipeline.run(source, diagnostics, interpreter);
+                return;
+            }
+            List<Stmt> statements = Pipeline.parse(source, diagnostics);
+            if (diagnostics.hadError()) return;
+            interpret(statements);
+        } finally {
+            reporter.report(diagnostics, interpreter.trace());
+        }
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static void run(String source) {
+        try {
+            List<Token> tokens = parallel
+                ? ParallelScanner.scanTokens(source, diagnostics)
+                : new Scanner(source, diagnostics).scanTokens();
+            List<Stmt> statements = parallel
+                ? ParallelParser.parse(tokens, diagnostics)
+                : new Parser(tokens, diagnostics).parse();
+            if (diagnostics.hadError()) return;
+            interpret(statements);
+        } finally {
+            reporter.report(diagnostics, interpreter.trace());
+        }
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    private static List<Stmt> optimize(List<Stmt> statements) {
+        return Fuser.fuse(DeadCodeEliminator.eliminate(statements, true));
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
+    private static void interpret(List<Stmt> statements) {
+        if (optimize) {
+            statements = optimize(statements);
+        }
+        if (interner != null) {
+            statements = interner.intern(statements);
+        }
+        if (optimize) {
+            // Type warnings come out before anything runs.
+            Diagnostics warnings = new Diagnostics();
+            TypeInference.infer(statements, warnings);
+            reporter.report(warnings);
+        }
+        if (concurrent) {
+            ConcurrentExecutor.interpret(statements, true, new SynchronizedEnvironment(), diagnostics, System.out);
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            interpreter.interpret(statements, true);
         }
     }
-
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line" + error.token.line + "]");
-        hasRuntimeError = true;
-    }
-
 }
@@ -0,0 +1,110 @@
+package org.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder events for the phases of a run and the errors it
+ * reports. All are off by default; the jlox.jfc settings in
+ * src/main/resources turn them on alongside a JDK profile:
+ *
+ *   java -XX:StartFlightRecording:settings=default,settings=target/classes/jlox.jfc,filename=run.jfr ...
+ */
+final class LoxEvents {
+  private LoxEvents() {
+  }
+
+  @Name("org.lox.Scan")
+  @Label("Scan")
+  @Category("Lox")
+  @StackTrace(false)
+  @Enabled(false)
+  static class Scan extends Event {
+    // UTF-16 chars, as the scanner sees the source, not bytes on disk.
+    @Label("Source Chars")
+    long sourceChars;
+
+    @Label("Tokens")
+    int tokens;
+  }
+
+  @Name("org.lox.Parse")
+  @Label("Parse")
+  @Category("Lox")
+  @StackTrace(false)
+  @Enabled(false)
+  static class Parse extends Event {
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Statements")
+    int statements;
+  }
+
+  @Name("org.lox.Interpret")
+  @Label("Interpret")
+  @Category("Lox")
+  @StackTrace(false)
+  @Enabled(false)
+  static class Interpret extends Event {
+    @Label("Statements")
+    int statements;
+
+    @Label("Nodes")
+    @Description("Expressions and statements evaluated")
+    long nodes;
+  }
+
+  @Name("org.lox.SlowStatement")
+  @Label("Slow Statement")
+  @Category("Lox")
+  @Description("A top-level statement that ran longer than the threshold")
+  @StackTrace(false)
+  @Enabled(false)
+  @Threshold("10 ms")
+  static class SlowStatement extends Event {
+    @Label("Line")
+    int line;
+
+    @Label("Kind")
+    String kind;
+  }
+
+  @Name("org.lox.SyntaxError")
+  @Label("Syntax Error")
+  @Category("Lox")
+  @StackTrace(false)
+  @Enabled(false)
+  static class SyntaxErrorEvent extends Event {
+    @Label("Line")
+    int line;
+
+    @Label("Lexeme")
+    String lexeme;
+
+    @Label("Message")
+    String message;
+  }
+
+  @Name("org.lox.RuntimeError")
+  @Label("Runtime Error")
+  @Category("Lox")
+  @StackTrace(false)
+  @Enabled(false)
+  static class RuntimeErrorEvent extends Event {
+    @Label("Line")
+    int line;
+
+    @Label("Lexeme")
+    String lexeme;
+
+    @Label("Message")
+    String message;
+  }
+}
@@ -0,0 +1,43 @@
+package org.lox;
+
+/**
+ * Formats Lox numbers the way stringify always has: Double.toString() with
+ * a trailing ".0" dropped. Integral values below 10^7, the ones
+ * Double.toString() writes without an exponent, are turned straight into
+ * digits, and small ones come from a table, so printing a counter
+ * allocates nothing. Everything else is only ever a single
+ * Double.toString() call, since no other value ends in ".0".
+ */
+final class NumberFormatter {
+  private static final int CACHED = 1024;
+  private static final String[] SMALL = new String[CACHED];
+
+  static {
+    for (int i = 0; i < CACHED; i++) {
+      SMALL[i] = Integer.toString(i);
+    }
+  }
+
+  private NumberFormatter() {
+  }
+
+  static String format(double value) {
+    if (value > -1e7 && value < 1e7) {
+      int integral = (int) value;
+      if (integral == value) {
+        if (integral >= 0 && integral < CACHED) {
+          // Double.toString(-0.0) is "-0.0".
+          if (integral == 0 && Double.doubleToRawLongBits(value) != 0)
+            return "-0";
+          return SMALL[integral];
+        }
+        return Integer.toString(integral);
+      }
+    }
+
+    String text = Double.toString(value);
+    if (text.endsWith(".0"))
+      return text.substring(0, text.length() - 2);
+    return text;
+  }
+}
@@ -0,0 +1,120 @@
+package org.lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import static org.lox.Token.TokenType.*;
+
+/**
+ * Parses the top-level declarations of large programs in parallel. A cheap
+ * pass over the tokens finds where top-level declarations end: a ';' or a
+ * closing '}' outside of any block. The tokens are cut into runs of whole
+ * declarations at those points and each run is parsed by its own Parser.
+ *
+ * In a program without syntax errors every such cut is a real declaration
+ * boundary, so the result is the same list Parser.parse() builds. If any run
+ * reports an error the runs are thrown away and the whole program is parsed
+ * again sequentially, so error recovery and diagnostics are exactly those of
+ * synchronize().
+ */
+class ParallelParser {
+  private static final int MIN_RUN = 64 * 1024;
+
+  static List<Stmt> parse(List<Token> tokens, Diagnostics diagnostics) {
+    int runs = Math.min(
+        tokens.size() / MIN_RUN,
+        4 * Runtime.getRuntime().availableProcessors());
+    if (runs < 2) {
+      return new Parser(tokens, diagnostics).parse();
+    }
+
+    List<Run> tasks = split(tokens, runs);
+    ForkJoinTask.invokeAll(tasks);
+
+    List<Stmt> statements = new ArrayList<>();
+    for (Run run : tasks) {
+      List<Stmt> parsed = run.join();
+      if (run.diagnostics.hadError()) {
+        return new Parser(tokens, diagnostics).parse();
+      }
+      statements.addAll(parsed);
+    }
+    return statements;
+  }
+
+  private static List<Run> split(List<Token> tokens, int runs) {
+    List<Run> tasks = new ArrayList<>();
+    Token eof = tokens.get(tokens.size() - 1);
+    int target = tokens.size() / runs;
+    int from = 0;
+    int depth = 0;
+
+    for (int i = 0; i < tokens.size() - 1; i++) {
+      switch (tokens.get(i).type) {
+        case LEFT_BRACE:
+          depth++;
+          break;
+        case RIGHT_BRACE:
+          depth--;
+          if (depth == 0 && i + 1 - from >= target) {
+            tasks.add(new Run(tokens, from, i + 1, eof));
+            from = i + 1;
+          }
+          break;
+        case SEMICOLON:
+          if (depth == 0 && i + 1 - from >= target) {
+            tasks.add(new Run(tokens, from, i + 1, eof));
+            from = i + 1;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    tasks.add(new Run(tokens, from, tokens.size() - 1, eof));
+    return tasks;
+  }
+
+  private static class Run extends RecursiveTask<List<Stmt>> {
+    private final List<Token> tokens;
+    final Diagnostics diagnostics = new Diagnostics();
+
+    Run(List<Token> tokens, int from, int to, Token eof) {
+      this.tokens = new Slice(tokens, from, to, eof);
+    }
+
+    @Override
+    protected List<Stmt> compute() {
+      return new Parser(tokens, diagnostics).parse();
+    }
+  }
+
+  // tokens[from, to) followed by eof, without copying.
+  private static class Slice extends AbstractList<Token> {
+    private final List<Token> tokens;
+    private final int from;
+    private final int size;
+    private final Token eof;
+
+    Slice(List<Token> tokens, int from, int to, Token eof) {
+      this.tokens = tokens;
+      this.from = from;
+      this.size = to - from;
+      this.eof = eof;
+    }
+
+    @Override
+    public Token get(int index) {
+      return index == size ? eof : tokens.get(from + index);
+    }
+
+    @Override
+    public int size() {
+      return size + 1;
+    }
+  }
+}
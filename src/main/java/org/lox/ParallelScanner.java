@@ -0,0 +1,99 @@
+package org.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scans large sources in parallel. The source is cut into chunks right after
+ * a newline that is not inside a string literal, so every token lies wholly
+ * inside one chunk and a string left open at the end of the source always
+ * lands in the last chunk. The chunks are scanned on the common fork-join
+ * pool and their tokens and diagnostics are joined back in source order,
+ * giving exactly what Scanner.scanTokens() would.
+ */
+class ParallelScanner {
+  private static final int MIN_CHUNK = 256 * 1024;
+
+  static List<Token> scanTokens(String source, Diagnostics diagnostics) {
+    int chunks = Math.min(
+        source.length() / MIN_CHUNK,
+        4 * Runtime.getRuntime().availableProcessors());
+    if (chunks < 2) {
+      return new Scanner(source, diagnostics).scanTokens();
+    }
+
+    List<Chunk> tasks = split(source, chunks);
+    ForkJoinTask.invokeAll(tasks);
+
+    List<Token> tokens = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); i++) {
+      Chunk chunk = tasks.get(i);
+      List<Token> scanned = chunk.join();
+      boolean last = i == tasks.size() - 1;
+      // Only the last chunk keeps its EOF token.
+      tokens.addAll(last ? scanned : scanned.subList(0, scanned.size() - 1));
+      diagnostics.addAll(chunk.diagnostics);
+    }
+    return tokens;
+  }
+
+  /**
+   * Walks the source tracking only whether it is inside a string or a
+   * comment, which is all the scanner needs to agree on a cut point, and
+   * cuts after the first safe newline past each chunk's target size.
+   */
+  private static List<Chunk> split(String source, int chunks) {
+    List<Chunk> tasks = new ArrayList<>();
+    int target = source.length() / chunks;
+    int from = 0;
+    int fromLine = 1;
+    int line = 1;
+    boolean inString = false;
+    boolean inComment = false;
+
+    for (int i = 0; i < source.length(); i++) {
+      char c = source.charAt(i);
+      if (c == '\n') {
+        line++;
+        inComment = false;
+        if (!inString && i + 1 - from >= target) {
+          tasks.add(new Chunk(source, from, i + 1, fromLine));
+          from = i + 1;
+          fromLine = line;
+        }
+      } else if (inComment) {
+        continue;
+      } else if (c == '"') {
+        inString = !inString;
+      } else if (!inString && c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+        inComment = true;
+        i++;
+      }
+    }
+
+    tasks.add(new Chunk(source, from, source.length(), fromLine));
+    return tasks;
+  }
+
+  private static class Chunk extends RecursiveTask<List<Token>> {
+    private final String source;
+    private final int from;
+    private final int to;
+    private final int line;
+    final Diagnostics diagnostics = new Diagnostics();
+
+    Chunk(String source, int from, int to, int line) {
+      this.source = source;
+      this.from = from;
+      this.to = to;
+      this.line = line;
+    }
+
+    @Override
+    protected List<Token> compute() {
+      return new Scanner(source, from, to, line, diagnostics).scanTokens();
+    }
+  }
+}
@@ -2,6 +2,7 @@ package org.lox;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.lox.Token.TokenType;
 
@@ -30,21 +31,56 @@ import static org.lox.Token.TokenType.*;
 
 public class Parser {
   private static class ParseError extends RuntimeException {
+    ParseError() {
+      // Thrown once per syntax error purely for unwinding; no stack trace.
+      super(null, null, false, false);
+    }
   };
 
   private final List<Token> tokens;
+  private final Diagnostics diagnostics;
   private int current = 0;
 
-  Parser(List<Token> tokens) {
+  Parser(List<Token> tokens, Diagnostics diagnostics) {
     this.tokens = tokens;
+    this.diagnostics = diagnostics;
   }
 
   List<Stmt> parse() {
     List<Stmt> statements = new ArrayList<>();
+    parse(statements::add);
+    return statements;
+  }
+
+  /**
+   * Hands each top-level declaration to sink as soon as it is parsed. A
+   * declaration with a syntax error is passed on as null.
+   */
+  void parse(Consumer<Stmt> sink) {
+    LoxEvents.Parse event = new LoxEvents.Parse();
+    event.begin();
+    int from = current;
     while (!isAtEnd()) {
-      statements.add(declaration());
+      sink.accept(declaration());
+      event.statements++;
+    }
+    event.tokens = current - from + 1;
+    event.commit();
+  }
+
+  /**
+   * Parses the tokens as a single expression, or returns null once a syntax
+   * error has been reported.
+   */
+  Expr parseExpression() {
+    try {
+      Expr expr = expression();
+      if (!isAtEnd())
+        throw error(peek(), "Expect end of expression.");
+      return expr;
+    } catch (ParseError e) {
+      return null;
     }
-    return statements;
   }
 
   private Stmt declaration() {
@@ -65,9 +101,10 @@ public class Parser {
   }
 
   private Stmt printStatement() {
+    Token keyword = previous();
     Expr value = expression();
     consume(SEMICOLON, "Expected ';' after value.");
-    return new Stmt.Print(value);
+    return new Stmt.Print(keyword, value);
   }
 
   private Stmt varDeclaration() {
@@ -235,7 +272,7 @@ public class Parser {
   }
 
   private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    diagnostics.error(token, message);
     return new ParseError();
   }
 
@@ -0,0 +1,175 @@
+package org.lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.lox.Token.TokenType.EOF;
+
+/**
+ * Runs the scanner, the parser and optionally the interpreter on separate
+ * threads, handing tokens over through a TokenRingBuffer. Each phase reports
+ * into its own Diagnostics, which are merged in phase order once the phases
+ * finish, so errors come out in the same order as a sequential run.
+ */
+class Pipeline {
+  private static final int CAPACITY = 4096;
+  // Marks the end of the statement queue in eager mode.
+  private static final Stmt END = new Stmt.Block(List.of());
+
+  /**
+   * Scans on a worker thread while parsing on the calling thread.
+   */
+  static List<Stmt> parse(String source, Diagnostics diagnostics) {
+    TokenRingBuffer buffer = new TokenRingBuffer(CAPACITY);
+    Diagnostics scanDiagnostics = new Diagnostics();
+    Diagnostics parseDiagnostics = new Diagnostics();
+    Worker scanner = new Worker("lox-scanner", () -> scan(source, scanDiagnostics, buffer));
+    scanner.start();
+
+    List<Stmt> statements;
+    try {
+      statements = new Parser(new StreamedTokens(buffer), parseDiagnostics).parse();
+    } finally {
+      buffer.close();
+    }
+    scanner.finish();
+
+    diagnostics.addAll(scanDiagnostics);
+    diagnostics.addAll(parseDiagnostics);
+    return statements;
+  }
+
+  /**
+   * Scans and parses on worker threads and interprets each top-level
+   * statement on the calling thread as soon as it is parsed. Execution stops
+   * at the first syntax error, scan or parse, so statements before it have
+   * already run.
+   */
+  static void run(String source, Diagnostics diagnostics, Interpreter interpreter) {
+    TokenRingBuffer buffer = new TokenRingBuffer(CAPACITY);
+    BlockingQueue<Stmt> statements = new LinkedBlockingQueue<>();
+    Diagnostics scanDiagnostics = new Diagnostics();
+    Diagnostics parseDiagnostics = new Diagnostics();
+    Worker scanner = new Worker("lox-scanner", () -> scan(source, scanDiagnostics, buffer));
+    Worker parser = new Worker("lox-parser", () -> {
+      try {
+        new Parser(new StreamedTokens(buffer), parseDiagnostics).parse(stmt -> {
+          if (stmt == null) {
+            statements.add(END);
+          } else {
+            statements.add(stmt);
+          }
+        });
+      } finally {
+        buffer.close();
+        statements.add(END);
+      }
+    });
+    scanner.start();
+    parser.start();
+
+    Diagnostics runtimeDiagnostics = new Diagnostics();
+    // The statements make up one run, sharing one budget.
+    interpreter.startRun();
+    for (;;) {
+      Stmt stmt = take(statements);
+      if (stmt == END)
+        break;
+      // A statement is only parsed once all its tokens are scanned, so any
+      // scan error before its end has been recorded by now.
+      if (!runtimeDiagnostics.hadRuntimeError() && !scanDiagnostics.hadError()) {
+        interpreter.resume(List.of(stmt), true, runtimeDiagnostics);
+      }
+    }
+    parser.finish();
+    scanner.finish();
+
+    diagnostics.addAll(scanDiagnostics);
+    diagnostics.addAll(parseDiagnostics);
+    diagnostics.addAll(runtimeDiagnostics);
+  }
+
+  private static void scan(String source, Diagnostics diagnostics, TokenRingBuffer buffer) {
+    boolean done = false;
+    try {
+      new Scanner(source, diagnostics).scanTokens(buffer::put);
+      done = true;
+    } finally {
+      // Let the parser finish even if the scanner blew up.
+      if (!done)
+        buffer.put(new Token(EOF, "", null, 0));
+    }
+  }
+
+  private static Stmt take(BlockingQueue<Stmt> statements) {
+    try {
+      return statements.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The tokens read from the buffer so far, pulling more on demand. The
+   * parser never reads past EOF, so get() never waits for a token that will
+   * not come. size() is the number of tokens received so far.
+   */
+  private static class StreamedTokens extends AbstractList<Token> {
+    private final TokenRingBuffer buffer;
+    private final List<Token> received = new ArrayList<>();
+
+    StreamedTokens(TokenRingBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public Token get(int index) {
+      while (index >= received.size()) {
+        received.add(buffer.take());
+      }
+      return received.get(index);
+    }
+
+    @Override
+    public int size() {
+      return received.size();
+    }
+  }
+
+  private static class Worker extends Thread {
+    private final Runnable body;
+    private volatile Throwable failure;
+
+    Worker(String name, Runnable body) {
+      super(name);
+      this.body = body;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        body.run();
+      } catch (Throwable t) {
+        failure = t;
+      }
+    }
+
+    // Waits for the worker and rethrows whatever it failed with.
+    void finish() {
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+      if (failure instanceof Error) throw (Error) failure;
+      if (failure != null) throw new IllegalStateException(failure);
+    }
+  }
+}
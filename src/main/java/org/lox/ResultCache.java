@@ -0,0 +1,244 @@
+package org.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Remembers what whole runs of scripts produced, for `jlox --cache DIR`.
+ * Lox has no input, clock or randomness, so everything a run prints and its
+ * exit code follow from the source, the options that change output and the
+ * interpreter itself. A run is keyed by a SHA-256 of the three, with
+ * VERSION standing in for the interpreter.
+ *
+ * Results live in memory, up to MEMORY_BYTES, and in a directory as one file
+ * per key, up to DISK_BYTES; both evict the least recently used first, the
+ * directory going by file modification times, which a hit refreshes. Files
+ * are written under a temporary name and moved into place, so several
+ * processes can share a directory. An unreadable file counts as a miss.
+ */
+class ResultCache {
+  // Bump whenever a change to the interpreter can change what a script
+  // prints or exits with, which makes every earlier result a miss.
+  static final int VERSION = 3;
+
+  static final long MEMORY_BYTES = 64L << 20;
+  static final long DISK_BYTES = 256L << 20;
+
+  private static final String SUFFIX = ".result";
+
+  /**
+   * What a run printed to stdout and stderr, and its exit code.
+   */
+  record Result(byte[] out, byte[] err, int code) {
+    long size() {
+      return out.length + err.length + 12;
+    }
+  }
+
+  /**
+   * Passes writes on to target and keeps a copy, so a run can be recorded
+   * while it prints.
+   */
+  static final class Tee extends OutputStream {
+    private final OutputStream target;
+    private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    Tee(OutputStream target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      target.write(b);
+      copy.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      target.write(bytes, offset, length);
+      copy.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      target.flush();
+    }
+
+    byte[] copy() {
+      return copy.toByteArray();
+    }
+  }
+
+  private final Path directory;
+  private final long memoryBytes;
+  private final long diskBytes;
+  private final Map<String, Result> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryUsed = 0;
+  // What the directory holds as far as this process knows; other processes
+  // may add to it, so eviction lists the files again.
+  private long diskUsed;
+
+  ResultCache(Path directory) throws IOException {
+    this(directory, MEMORY_BYTES, DISK_BYTES);
+  }
+
+  ResultCache(Path directory, long memoryBytes, long diskBytes) throws IOException {
+    this.directory = directory;
+    this.memoryBytes = memoryBytes;
+    this.diskBytes = diskBytes;
+    Files.createDirectories(directory);
+    this.diskUsed = files().stream().mapToLong(ResultCache::size).sum();
+  }
+
+  /**
+   * Whether a run that ended with diagnostics may be cached. One stopped by
+   * its Budget may not: a time limit makes where it stops depend on the
+   * machine and its load, and what it printed with it.
+   */
+  static boolean cacheable(Diagnostics diagnostics) {
+    return !diagnostics.exceededBudget();
+  }
+
+  /**
+   * The key of a run of source with options, a description of whichever
+   * command-line options change what it prints.
+   */
+  static String key(String source, String options) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(("jlox " + VERSION + "\0" + options + "\0").getBytes(StandardCharsets.UTF_8));
+      byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every JDK has SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The result stored under key, or null.
+   */
+  synchronized Result get(String key) {
+    Result result = memory.get(key);
+    if (result != null)
+      return result;
+
+    Path file = directory.resolve(key + SUFFIX);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+      int code = in.readInt();
+      byte[] out = in.readNBytes(in.readInt());
+      byte[] err = in.readNBytes(in.readInt());
+      if (in.available() != 0 || out.length + err.length + 12 != Files.size(file))
+        throw new IOException("Malformed result file " + file);
+      result = new Result(out, err, code);
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+    remember(key, result);
+    return result;
+  }
+
+  synchronized void put(String key, Result result) {
+    remember(key, result);
+    if (result.size() > diskBytes)
+      return;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(result.code());
+      out.writeInt(result.out().length);
+      out.write(result.out());
+      out.writeInt(result.err().length);
+      out.write(result.err());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    try {
+      Path temporary = Files.createTempFile(directory, key, ".tmp");
+      Files.write(temporary, bytes.toByteArray());
+      Files.move(temporary, directory.resolve(key + SUFFIX),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      diskUsed += result.size();
+      if (diskUsed > diskBytes)
+        evict();
+    } catch (IOException e) {
+      // A cache that cannot be written to only costs the next run its hit.
+    }
+  }
+
+  private void remember(String key, Result result) {
+    if (result.size() > memoryBytes)
+      return;
+    Result previous = memory.put(key, result);
+    memoryUsed += result.size() - (previous == null ? 0 : previous.size());
+    Iterator<Map.Entry<String, Result>> eldest = memory.entrySet().iterator();
+    while (memoryUsed > memoryBytes) {
+      memoryUsed -= eldest.next().getValue().size();
+      eldest.remove();
+    }
+  }
+
+  // Deletes the least recently used files until the directory fits.
+  private void evict() throws IOException {
+    List<Path> files = files();
+    files.sort(Comparator.comparing(ResultCache::modified));
+    diskUsed = files.stream().mapToLong(ResultCache::size).sum();
+    for (Path file : files) {
+      if (diskUsed <= diskBytes)
+        break;
+      long size = size(file);
+      if (Files.deleteIfExists(file))
+        diskUsed -= size;
+    }
+  }
+
+  private List<Path> files() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      List<Path> results = new ArrayList<>();
+      files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(results::add);
+      return results;
+    }
+  }
+
+  // Zero for a file another process deleted meanwhile.
+  private static long size(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private static FileTime modified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+}
@@ -4,7 +4,9 @@ public class RuntimeError extends RuntimeException {
   final Token token;
 
   RuntimeError(Token token, String message) {
-    super(message);
+    // Runtime errors are reported through Diagnostics and never need a Java
+    // stack trace, so skip filling one in.
+    super(message, null, false, false);
     this.token = token;
   }
 }
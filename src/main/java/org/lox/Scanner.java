@@ -4,15 +4,19 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 import org.lox.Token.TokenType;
 import static org.lox.Token.TokenType.*;
 
 public class Scanner {
     private final String source;
+    private final Diagnostics diagnostics;
     private final List<Token> tokens = new ArrayList<>();
-    private int start = 0;
-    private int current = 0;
-    private int line = 1;
+    private Consumer<Token> sink = tokens::add;
+    private final int end;
+    private int start;
+    private int current;
+    private int line;
     private static final Map<String, TokenType> keywords;
 
     static {
@@ -35,22 +39,54 @@ public class Scanner {
         keywords.put("while",   WHILE);
     }
 
-    Scanner(String source) {
+    Scanner(String source, Diagnostics diagnostics) {
+        this(source, 0, source.length(), 1, diagnostics);
+    }
+
+    /**
+     * Scans only source[from, to), which starts on the given line. Offsets
+     * in error messages stay relative to the whole source.
+     */
+    Scanner(String source, int from, int to, int line, Diagnostics diagnostics) {
         this.source = source;
+        this.diagnostics = diagnostics;
+        this.start = from;
+        this.current = from;
+        this.end = to;
+        this.line = line;
     }
 
     List<Token> scanTokens() {
+        scanTokens(tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Hands every token to sink as soon as it is scanned, ending with EOF.
+     */
+    void scanTokens(Consumer<Token> sink) {
+        LoxEvents.Scan event = new LoxEvents.Scan();
+        event.begin();
+        this.sink = sink;
+        if (event.isEnabled()) {
+            this.sink = token -> {
+                event.tokens++;
+                sink.accept(token);
+            };
+        }
+        int from = current;
         while(!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        this.sink.accept(new Token(EOF, "", null, line));
+        event.sourceChars = end - from;
+        event.commit();
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     private void scanToken() {
@@ -129,7 +165,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character " + c + " at " + current);
+                    diagnostics.error(line, "Unexpected character " + c + " at " + current);
                 }
                 break;
         }
@@ -153,11 +189,20 @@ public class Scanner {
     private void identifier() {
         while(isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
+        // Interning first means a repeated identifier is never copied out of
+        // the source again; its lexeme is the table's canonical string.
+        SymbolTable.Entry entry = SymbolTable.entry(source, start, current);
+        String text = entry != null ? entry.name : source.substring(start, current);
         TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-
-        addToken(type);
+        if (type != null) {
+            sink.accept(new Token(type, text, null, line, SymbolTable.NO_SYMBOL));
+        } else if (entry == null) {
+            // Scan errors stop the run, so the token only has to parse.
+            diagnostics.error(line, "Too many distinct identifiers.");
+            sink.accept(new Token(IDENTIFIER, text, null, line, SymbolTable.NO_SYMBOL));
+        } else {
+            sink.accept(new Token(IDENTIFIER, text, null, line, entry.symbol));
+        }
     }
 
     private void number() {
@@ -173,7 +218,7 @@ public class Scanner {
     }
 
     private char peekNext() {
-        if (current + 1 > source.length()) return '\0';
+        if (current + 1 >= end) return '\0';
         return source.charAt(current + 1);
     }
 
@@ -184,7 +229,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Untermintad string.");
+            diagnostics.error(line, "Untermintad string.");
             return;
         }
 
@@ -219,6 +264,6 @@ public class Scanner {
 
     private void addToken(TokenType type, Object literal) {
         String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        sink.accept(new Token(type, text, literal, line, SymbolTable.NO_SYMBOL));
     }
 }
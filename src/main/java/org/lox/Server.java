@@ -0,0 +1,297 @@
+package org.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running evaluation server for `jlox --serve ADDRESS`, where ADDRESS
+ * is a TCP port on the loopback interface or the path of a Unix domain
+ * socket. Keeping one JVM around means scripts run on already compiled
+ * interpreter code, and scripts seen before skip scanning and parsing.
+ *
+ * A connection carries any number of requests, one after another. A request
+ * is an int length followed by that many bytes of UTF-8 source. The reply
+ * is a series of frames, each a tag byte followed by an int:
+ *
+ *   OUT, length, bytes   printed output, sent as the script runs
+ *   ERR, length, bytes   diagnostics, in the format jlox prints them
+ *   EXIT, code           end of the reply; code is 0, 65 or 70 as for jlox
+ *
+ * A request longer than the server's maximum, or with a negative length,
+ * is answered with an ERR frame and EXIT 64, and the connection is closed.
+ *
+ * Every request runs in a session of its own with fresh globals and the
+ * whole of the server's Budget, DEFAULT_BUDGET unless jlox was given
+ * limits of its own. A script that nests too deeply for the stack is
+ * reported as a runtime error rather than taking the connection down.
+ * With a ResultCache, a script run before is answered from it without
+ * running, unless that run ran out of its budget or its stack.
+ */
+class Server {
+  static final int OUT = 1;
+  static final int ERR = 2;
+  static final int EXIT = 3;
+
+  // Keeps one client from tying up the server or exhausting its memory.
+  static final Budget DEFAULT_BUDGET = Budget.UNLIMITED
+      .withMaxNanos(10_000_000_000L)
+      .withMaxDepth(1_000)
+      .withMaxStringBytes(64 << 20);
+  static final int DEFAULT_MAX_REQUEST = 1 << 20;
+
+  // Characters of source whose parsed scripts are kept. A script's tree
+  // grows with its source, so this bounds both.
+  private static final long CACHED_SOURCE_CHARS = 16L << 20;
+
+  private final ScriptCache cache = new ScriptCache(CACHED_SOURCE_CHARS);
+  // Null unless serving with --cache.
+  private final ResultCache results;
+  private final Budget budget;
+  // Bytes of source a single request may have.
+  private final int maxRequest;
+
+  private Server(ResultCache results, Budget budget, int maxRequest) {
+    this.results = results;
+    this.budget = budget;
+    this.maxRequest = maxRequest;
+  }
+
+  static void serve(String address, ResultCache results, Budget budget, int maxRequest) throws IOException {
+    ServerSocketChannel server = open(address);
+    ExecutorService executor = connectionExecutor();
+    System.err.println("jlox serving on " + server.getLocalAddress());
+    Server handler = new Server(results, budget, maxRequest);
+    for (;;) {
+      SocketChannel connection = server.accept();
+      executor.execute(() -> handler.handle(connection));
+    }
+  }
+
+  private static ServerSocketChannel open(String address) throws IOException {
+    if (address.chars().allMatch(Character::isDigit)) {
+      SocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+      return ServerSocketChannel.open().bind(local);
+    }
+
+    Path path = Path.of(address);
+    // A socket file left behind by an earlier server.
+    if (Files.exists(path) && !Files.isRegularFile(path) && !Files.isDirectory(path))
+      Files.delete(path);
+    ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(path));
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        // Nothing left to do on the way out.
+      }
+    }));
+    return server;
+  }
+
+  /**
+   * A virtual thread per connection where the JDK has them (21 and later),
+   * otherwise a cached pool of platform threads.
+   */
+  private static ExecutorService connectionExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  private void handle(SocketChannel connection) {
+    try (connection) {
+      // Replies end in small frames; don't let Nagle hold them back.
+      if (connection.getLocalAddress() instanceof InetSocketAddress)
+        connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+      for (;;) {
+        String source;
+        try {
+          int length = in.readInt();
+          if (length < 0 || length > maxRequest) {
+            refuse(out, "Request of " + length + " bytes refused; the limit is " + maxRequest + " bytes.");
+            return;
+          }
+          byte[] bytes = new byte[length];
+          in.readFully(bytes);
+          source = new String(bytes, StandardCharsets.UTF_8);
+        } catch (EOFException e) {
+          return;
+        }
+        int code = run(source, out);
+        out.writeByte(EXIT);
+        out.writeInt(code);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // The client went away; its session is simply dropped.
+    }
+  }
+
+  // Replies with message and EXIT 64. The stream cannot be trusted after a
+  // bad length, so the caller closes the connection.
+  private static void refuse(DataOutputStream socket, String message) throws IOException {
+    FrameOutputStream err = new FrameOutputStream(socket, ERR);
+    err.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+    err.flush();
+    socket.writeByte(EXIT);
+    socket.writeInt(64);
+    socket.flush();
+  }
+
+  private int run(String source, DataOutputStream socket) throws IOException {
+    // Replies are always UTF-8, unlike jlox's own output, so they get keys
+    // of their own.
+    String key = results == null ? null : ResultCache.key(source, "serve " + budget);
+    ResultCache.Result hit = key == null ? null : results.get(key);
+    if (hit != null) {
+      FrameOutputStream out = new FrameOutputStream(socket, OUT);
+      out.write(hit.out());
+      out.flush();
+      FrameOutputStream err = new FrameOutputStream(socket, ERR);
+      err.write(hit.err());
+      err.flush();
+      return hit.code();
+    }
+
+    Diagnostics diagnostics = new Diagnostics();
+    ResultCache.Tee outCopy = new ResultCache.Tee(new FrameOutputStream(socket, OUT));
+    ResultCache.Tee errCopy = new ResultCache.Tee(new FrameOutputStream(socket, ERR));
+    PrintStream out = new PrintStream(outCopy, false, StandardCharsets.UTF_8);
+    Interpreter interpreter = new Interpreter(diagnostics, new Environment(), out);
+    interpreter.setBudget(budget);
+    boolean overflowed = false;
+    try {
+      List<Stmt> statements = cache.get(source);
+      if (statements == null) {
+        List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+        statements = new Parser(tokens, diagnostics).parse();
+        if (!diagnostics.hadError())
+          cache.put(source, Collections.unmodifiableList(statements));
+      }
+      if (!diagnostics.hadError())
+        interpreter.interpret(statements, true);
+    } catch (StackOverflowError e) {
+      overflowed = true;
+      diagnostics.runtimeError(new RuntimeError(null, "Stack overflow; the script nests too deeply."));
+    } finally {
+      out.flush();
+      PrintStream err = new PrintStream(errCopy, false, StandardCharsets.UTF_8);
+      new DiagnosticReporter(err).report(diagnostics, interpreter.trace());
+      err.flush();
+    }
+
+    int code = diagnostics.hadError() ? 65 : diagnostics.hadRuntimeError() ? 70 : 0;
+    // Where a run stops on its budget or stack can vary from run to run.
+    if (results != null && ResultCache.cacheable(diagnostics) && !overflowed)
+      results.put(key, new ResultCache.Result(outCopy.copy(), errCopy.copy(), code));
+    return code;
+  }
+
+  // Scripts that parsed without errors, least recently used first, up to
+  // a total length of source.
+  private static class ScriptCache {
+    private final Map<String, List<Stmt>> scripts = new LinkedHashMap<>(16, 0.75f, true);
+    private final long capacity;
+    private long chars = 0;
+
+    ScriptCache(long capacity) {
+      this.capacity = capacity;
+    }
+
+    synchronized List<Stmt> get(String source) {
+      return scripts.get(source);
+    }
+
+    synchronized void put(String source, List<Stmt> statements) {
+      if (source.length() > capacity)
+        return;
+      if (scripts.put(source, statements) == null)
+        chars += source.length();
+      Iterator<String> eldest = scripts.keySet().iterator();
+      while (chars > capacity) {
+        chars -= eldest.next().length();
+        eldest.remove();
+      }
+    }
+  }
+
+  // Buffers writes and sends them on as frames with the given tag. The
+  // socket itself is only flushed at the end of each reply.
+  private static class FrameOutputStream extends OutputStream {
+    private final DataOutputStream socket;
+    private final int tag;
+    private final byte[] buffer = new byte[8192];
+    private int count = 0;
+
+    FrameOutputStream(DataOutputStream socket, int tag) {
+      this.socket = socket;
+      this.tag = tag;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buffer.length)
+        flushFrame();
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      while (length > 0) {
+        if (count == buffer.length)
+          flushFrame();
+        int n = Math.min(length, buffer.length - count);
+        System.arraycopy(bytes, offset, buffer, count, n);
+        count += n;
+        offset += n;
+        length -= n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      flushFrame();
+    }
+
+    private void flushFrame() throws IOException {
+      if (count == 0)
+        return;
+      socket.writeByte(tag);
+      socket.writeInt(count);
+      socket.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package org.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the global bindings left by a prelude to a file and restores them,
+ * for `jlox --snapshot-after prelude.lox -o prelude.snap` and then
+ * `jlox --restore prelude.snap script.lox`. Restoring defines each binding
+ * straight into globals sized for them up front, instead of scanning,
+ * parsing and running the prelude again.
+ *
+ * The format is big-endian:
+ *
+ *   "LOXS", format version, number of bindings   three ints
+ *   per binding:
+ *     name                                        int length, UTF-8 bytes
+ *     tag                                         one byte
+ *     value                                       per tag, see below
+ *
+ * Numbers are a double and strings an int length and UTF-8 bytes; nil,
+ * true and false have no value. Symbols differ between processes, so
+ * bindings are stored by name.
+ */
+class Snapshot {
+  private static final int MAGIC = 0x4c4f5853;
+  private static final int FORMAT = 1;
+
+  private static final byte NIL = 0;
+  private static final byte NUMBER = 1;
+  private static final byte STRING = 2;
+  private static final byte TRUE = 3;
+  private static final byte FALSE = 4;
+
+  private Snapshot() {
+  }
+
+  /**
+   * Writes every binding visible in globals to file, replacing it.
+   */
+  static void write(Environment globals, Path file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+      int[] count = {0};
+      globals.forEach((symbol, value) -> count[0]++);
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT);
+      out.writeInt(count[0]);
+
+      globals.forEach((symbol, value) -> {
+        try {
+          writeString(out, SymbolTable.name(symbol));
+          write(out, value);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static void write(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NIL);
+    } else if (value instanceof Double) {
+      out.writeByte(NUMBER);
+      out.writeDouble((double) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte((boolean) value ? TRUE : FALSE);
+    } else {
+      throw new IllegalArgumentException("Cannot snapshot a " + value.getClass().getName() + ".");
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Maps file into memory and returns new globals holding its bindings.
+   *
+   * @throws IOException if file cannot be read or is not a snapshot
+   */
+  static Environment read(Path file) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT)
+        throw new IOException(file + " is not a jlox snapshot.");
+      int count = buffer.getInt();
+      // Every binding takes at least a name length and a tag.
+      if (count < 0 || count > buffer.remaining() / 5)
+        throw new IOException(file + " is corrupt.");
+      Environment globals = new Environment(count);
+      // Shared by every name and string; most fit in the first one.
+      byte[] bytes = new byte[256];
+      for (int i = 0; i < count; i++) {
+        int length = length(buffer, file);
+        if (length > bytes.length)
+          bytes = new byte[length];
+        buffer.get(bytes, 0, length);
+        int symbol = SymbolTable.intern(new String(bytes, 0, length, StandardCharsets.UTF_8));
+
+        Object value;
+        switch (buffer.get()) {
+          case NIL:
+            value = null;
+            break;
+          case NUMBER:
+            value = buffer.getDouble();
+            break;
+          case STRING:
+            length = length(buffer, file);
+            if (length > bytes.length)
+              bytes = new byte[length];
+            buffer.get(bytes, 0, length);
+            value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            break;
+          case TRUE:
+            value = true;
+            break;
+          case FALSE:
+            value = false;
+            break;
+          default:
+            throw new IOException(file + " is corrupt.");
+        }
+        globals.define(symbol, value);
+      }
+      if (buffer.hasRemaining())
+        throw new IOException(file + " is corrupt.");
+      return globals;
+    } catch (BufferUnderflowException e) {
+      throw new IOException(file + " is truncated.");
+    } catch (IllegalStateException e) {
+      throw new IOException(file + " has more names than the symbol table holds.");
+    }
+  }
+
+  private static int length(MappedByteBuffer buffer, Path file) throws IOException {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining())
+      throw new IOException(file + " is corrupt.");
+    return length;
+  }
+}
@@ -2,14 +2,14 @@ package org.lox;
 
 import java.util.List;
 
-abstract class Stmt{
+abstract sealed class Stmt{
   interface Visitor<R> {
     R visitBlockStmt(Block stmt);
     R visitExpressionStmt(Expression stmt);
     R visitPrintStmt(Print stmt);
     R visitVarStmt(Var stmt);
   }
-  static class Block extends Stmt {
+  static final class Block extends Stmt {
     Block(List<Stmt> statements) {
       this.statements = statements;
     }
@@ -21,7 +21,7 @@ abstract class Stmt{
 
     final List<Stmt> statements;
   }
-  static class Expression extends Stmt {
+  static final class Expression extends Stmt {
     Expression(Expr expression) {
       this.expression = expression;
     }
@@ -33,8 +33,9 @@ abstract class Stmt{
 
     final Expr expression;
   }
-  static class Print extends Stmt {
-    Print(Expr expression) {
+  static final class Print extends Stmt {
+    Print(Token keyword, Expr expression) {
+      this.keyword = keyword;
       this.expression = expression;
     }
 
@@ -43,9 +44,10 @@ abstract class Stmt{
         return visitor.visitPrintStmt(this);
     }
 
+    final Token keyword;
     final Expr expression;
   }
-  static class Var extends Stmt {
+  static final class Var extends Stmt {
     Var(Token name, Expr initializer) {
       this.name = name;
       this.initializer = initializer;
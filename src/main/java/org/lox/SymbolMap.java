@@ -0,0 +1,78 @@
+package org.lox;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Open-addressing map from symbols to values. Values may be null, so get()
+ * takes the value to return for missing keys.
+ */
+final class SymbolMap {
+  private int[] keys;
+  private Object[] values;
+  private int size = 0;
+
+  SymbolMap() {
+    this(8);
+  }
+
+  // capacity must be a power of two.
+  SymbolMap(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+  }
+
+  Object get(int key, Object absent) {
+    int mask = keys.length - 1;
+    for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+      int k = keys[i];
+      if (k == key)
+        return values[i];
+      if (k == SymbolTable.NO_SYMBOL)
+        return absent;
+    }
+  }
+
+  void put(int key, Object value) {
+    int mask = keys.length - 1;
+    int i = slot(key, mask);
+    while (keys[i] != SymbolTable.NO_SYMBOL) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * 4 > keys.length * 3)
+      grow();
+  }
+
+  int size() {
+    return size;
+  }
+
+  void forEach(BiConsumer<Integer, Object> action) {
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != SymbolTable.NO_SYMBOL)
+        action.accept(keys[i], values[i]);
+    }
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new Object[oldKeys.length * 2];
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != SymbolTable.NO_SYMBOL)
+        put(oldKeys[i], oldValues[i]);
+    }
+  }
+
+  private static int slot(int key, int mask) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,140 @@
+package org.lox;
+
+import java.util.Arrays;
+
+/**
+ * Process-wide table giving every identifier a small positive integer, so
+ * scopes can be keyed by int instead of hashing strings. Symbols are handed
+ * out from 1 and are never reused.
+ *
+ * The table lives as long as the process, which under --serve means every
+ * identifier any client ever sent stays in it. So it is bounded: once it
+ * holds MAX_SYMBOLS names, or MAX_CHARS characters of them, entry()
+ * returns null for a name it has not seen and the scanner reports the
+ * identifier as an error. Names already in the table keep working.
+ *
+ * Lookups do not lock: entries are immutable and published through a
+ * volatile table, so a reader either finds a fully built entry or falls
+ * back to the synchronized slow path, which checks again before inserting.
+ * A lock-free reader must take the name from the entry it found; the
+ * symbol-to-name array is only safe to read under the lock.
+ */
+final class SymbolTable {
+  static final int NO_SYMBOL = 0;
+  static final int MAX_SYMBOLS = 1 << 18;
+  static final long MAX_CHARS = 16L << 20;
+
+  static final class Entry {
+    final String name;
+    final int hash;
+    final int symbol;
+
+    Entry(String name, int hash, int symbol) {
+      this.name = name;
+      this.hash = hash;
+      this.symbol = symbol;
+    }
+  }
+
+  private static volatile Entry[] table = new Entry[1024];
+  // Guarded by the class lock.
+  private static String[] names = new String[512];
+  private static int count = 0;
+  private static long chars = 0;
+
+  private SymbolTable() {
+  }
+
+  static int intern(String name) {
+    Entry entry = entry(name, 0, name.length());
+    if (entry == null)
+      throw new IllegalStateException("Symbol table is full.");
+    return entry.symbol;
+  }
+
+  /**
+   * The entry of source[start, end), without copying the characters out
+   * unless the identifier has never been seen before. Its name is the
+   * canonical string, which is also the lexeme of every token scanned
+   * with it. Null if the identifier is new and the table is full.
+   */
+  static Entry entry(String source, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + source.charAt(i);
+    }
+
+    Entry entry = find(table, source, start, end, hash);
+    if (entry != null)
+      return entry;
+    return insert(source, start, end, hash);
+  }
+
+  /**
+   * The canonical name of symbol. Takes the lock, so it is meant for
+   * reporting rather than for hot paths.
+   */
+  static synchronized String name(int symbol) {
+    return names[symbol];
+  }
+
+  private static Entry find(Entry[] entries, String source, int start, int end, int hash) {
+    int mask = entries.length - 1;
+    int length = end - start;
+    for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+      Entry entry = entries[i];
+      if (entry == null)
+        return null;
+      if (entry.hash == hash && entry.name.length() == length
+          && source.regionMatches(start, entry.name, 0, length))
+        return entry;
+    }
+  }
+
+  private static synchronized Entry insert(String source, int start, int end, int hash) {
+    Entry[] entries = table;
+    Entry existing = find(entries, source, start, end, hash);
+    if (existing != null)
+      return existing;
+    if (count >= MAX_SYMBOLS || chars + (end - start) > MAX_CHARS)
+      return null;
+
+    chars += end - start;
+    int symbol = ++count;
+    String name = source.substring(start, end);
+    if (symbol >= names.length) {
+      names = Arrays.copyOf(names, names.length * 2);
+    }
+    names[symbol] = name;
+
+    if (count * 2 > entries.length) {
+      entries = rehash(entries);
+    }
+    Entry entry = new Entry(name, hash, symbol);
+    place(entries, entry);
+    table = entries;
+    return entry;
+  }
+
+  private static Entry[] rehash(Entry[] entries) {
+    Entry[] grown = new Entry[entries.length * 2];
+    for (Entry entry : entries) {
+      if (entry != null)
+        place(grown, entry);
+    }
+    return grown;
+  }
+
+  private static void place(Entry[] entries, Entry entry) {
+    int mask = entries.length - 1;
+    int i = mix(entry.hash) & mask;
+    while (entries[i] != null) {
+      i = (i + 1) & mask;
+    }
+    entries[i] = entry;
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,23 @@
+package org.lox;
+
+/**
+ * Globals that several interpreters may read and write at once. Every
+ * access to the bindings holds this environment's lock; block scopes built
+ * on top of it stay private to the interpreter running them.
+ */
+class SynchronizedEnvironment extends Environment {
+  @Override
+  synchronized Object get(Token name) {
+    return super.get(name);
+  }
+
+  @Override
+  synchronized void define(int symbol, Object value) {
+    super.define(symbol, value);
+  }
+
+  @Override
+  synchronized void assign(Token name, Object value) {
+    super.assign(name, value);
+  }
+}
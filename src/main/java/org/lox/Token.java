@@ -5,12 +5,20 @@ public class Token {
     final String lexeme;
     final Object literal;
     final int line;
+    // SymbolTable symbol of an identifier, NO_SYMBOL for other tokens.
+    final int symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line,
+            type == TokenType.IDENTIFIER ? SymbolTable.intern(lexeme) : SymbolTable.NO_SYMBOL);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString() {
@@ -0,0 +1,83 @@
+package org.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer queue of tokens. The producer only
+ * writes tail and the consumer only writes head, so neither side needs a
+ * lock: each publishes its index with an ordered store and caches the other
+ * side's index until it runs out of room or tokens.
+ */
+class TokenRingBuffer {
+  private static final int SPINS = 100;
+
+  private final Token[] slots;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private volatile boolean closed = false;
+
+  // Only touched by the producer.
+  private long cachedHead = 0;
+  // Only touched by the consumer.
+  private long cachedTail = 0;
+
+  TokenRingBuffer(int capacity) {
+    if (Integer.bitCount(capacity) != 1)
+      throw new IllegalArgumentException("Capacity must be a power of two.");
+    this.slots = new Token[capacity];
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Blocks while the buffer is full. Tokens put after close() are dropped.
+   */
+  void put(Token token) {
+    long t = tail.get();
+    int idle = 0;
+    while (t - cachedHead == slots.length) {
+      if (closed)
+        return;
+      cachedHead = head.get();
+      idle = idle(idle);
+    }
+    slots[(int) t & mask] = token;
+    tail.lazySet(t + 1);
+  }
+
+  /**
+   * Blocks while the buffer is empty.
+   */
+  Token take() {
+    long h = head.get();
+    int idle = 0;
+    while (h == cachedTail) {
+      cachedTail = tail.get();
+      if (h == cachedTail)
+        idle = idle(idle);
+    }
+    int slot = (int) h & mask;
+    Token token = slots[slot];
+    slots[slot] = null;
+    head.lazySet(h + 1);
+    return token;
+  }
+
+  /**
+   * Called by the consumer when it stops reading, so a producer blocked on
+   * a full buffer does not wait forever.
+   */
+  void close() {
+    closed = true;
+  }
+
+  private static int idle(int count) {
+    if (count < SPINS) {
+      Thread.onSpinWait();
+    } else {
+      LockSupport.parkNanos(1_000);
+    }
+    return count + 1;
+  }
+}
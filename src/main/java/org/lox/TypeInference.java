@@ -0,0 +1,193 @@
+package org.lox;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lox.Token.TokenType;
+import org.lox.VariableKinds.Kind;
+
+/**
+ * Tags every expression with the kind of value all of its completed
+ * evaluations yield, so the interpreter can skip the operand checks of nodes
+ * proven to pass them. An operator node is only tagged with a type once its
+ * own operand checks are proven to pass: `a - b` is NUMBER when both are
+ * numbers, and UNKNOWN otherwise.
+ *
+ * A forward pass tracks the kind of each variable declared in the program
+ * in VariableKinds, as DeadCodeEliminator does. A node reached more than
+ * once, such as one shared by an Interner, is tagged with the join of
+ * every visit.
+ *
+ * Operators whose operand types guarantee an error, such as `"a" - 1`, are
+ * reported as warnings before anything runs.
+ */
+class TypeInference implements Expr.Visitor<Kind>, Stmt.Visitor<Void> {
+  private final Diagnostics diagnostics;
+  private final VariableKinds variables = new VariableKinds();
+  private final Map<Expr, Kind> inferred = new IdentityHashMap<>();
+  // Operators already warned about, so a shared node warns once.
+  private final Set<Token> warned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  private TypeInference(Diagnostics diagnostics) {
+    this.diagnostics = diagnostics;
+  }
+
+  /**
+   * Tags the expressions of statements, which run on fresh globals, and
+   * reports guaranteed type errors to diagnostics as warnings. Tags from
+   * an earlier run are overwritten.
+   */
+  static void infer(List<Stmt> statements, Diagnostics diagnostics) {
+    TypeInference inference = new TypeInference(diagnostics);
+    for (Stmt stmt : statements) {
+      stmt.accept(inference);
+    }
+    for (Map.Entry<Expr, Kind> entry : inference.inferred.entrySet()) {
+      entry.getKey().type = entry.getValue();
+    }
+  }
+
+  private Kind infer(Expr expr) {
+    return expr.accept(this);
+  }
+
+  // Records kind for this visit of expr and returns it.
+  private Kind tag(Expr expr, Kind kind) {
+    inferred.merge(expr, kind, Kind::join);
+    return kind;
+  }
+
+  private void warn(Token operator, String message) {
+    if (warned.add(operator))
+      diagnostics.warning(operator, message);
+  }
+
+  private Kind binary(Token operator, Kind left, Kind right) {
+    switch (operator.type) {
+      case MINUS:
+      case SLASH:
+      case STAR:
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        if (left == Kind.NUMBER && right == Kind.NUMBER)
+          return operator.type == TokenType.MINUS || operator.type == TokenType.SLASH
+              || operator.type == TokenType.STAR ? Kind.NUMBER : Kind.BOOL;
+        if (left.isNotNumber() || right.isNotNumber())
+          warn(operator, "Operands must be numbers.");
+        return Kind.UNKNOWN;
+      case PLUS:
+        if ((left == Kind.NUMBER || left == Kind.STRING) && left == right)
+          return left;
+        // A number and a string, or anything with a bool or nil.
+        if (left == Kind.BOOL || left == Kind.NIL || right == Kind.BOOL || right == Kind.NIL
+            || ((left == Kind.NUMBER || left == Kind.STRING) && (right == Kind.NUMBER || right == Kind.STRING)))
+          warn(operator, "Operands can be either numbers or strings.");
+        return Kind.UNKNOWN;
+      case EQUAL_EQUAL:
+      case BANG_EQUAL:
+        return Kind.BOOL;
+      default:
+        return Kind.UNKNOWN;
+    }
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    variables.beginScope();
+    for (Stmt statement : stmt.statements) {
+      statement.accept(this);
+    }
+    variables.endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    infer(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    infer(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    variables.declare(stmt.name, stmt.initializer == null ? Kind.NIL : infer(stmt.initializer));
+    return null;
+  }
+
+  @Override
+  public Kind visitAssignExpr(Expr.Assign expr) {
+    Kind value = infer(expr.value);
+    variables.assigned(expr.name, value);
+    return tag(expr, value);
+  }
+
+  @Override
+  public Kind visitBinaryExpr(Expr.Binary expr) {
+    Kind left = infer(expr.left);
+    Kind right = infer(expr.right);
+    return tag(expr, binary(expr.operator, left, right));
+  }
+
+  @Override
+  public Kind visitTernaryExpr(Expr.Ternary expr) {
+    infer(expr.first);
+    variables.beginBranch();
+    Kind second = infer(expr.second);
+    Kind last = infer(expr.last);
+    variables.endBranch();
+    return tag(expr, second.join(last));
+  }
+
+  @Override
+  public Kind visitGroupingExpr(Expr.Grouping expr) {
+    return tag(expr, infer(expr.expression));
+  }
+
+  @Override
+  public Kind visitLiteralExpr(Expr.Literal expr) {
+    return tag(expr, Kind.of(expr.value));
+  }
+
+  @Override
+  public Kind visitUnaryExpr(Expr.Unary expr) {
+    Kind right = infer(expr.right);
+    switch (expr.operator.type) {
+      case MINUS:
+        if (right == Kind.NUMBER)
+          return tag(expr, Kind.NUMBER);
+        if (right.isNotNumber())
+          warn(expr.operator, "Operand must be a number.");
+        return tag(expr, Kind.UNKNOWN);
+      case BANG:
+        return tag(expr, Kind.BOOL);
+      default:
+        return tag(expr, Kind.UNKNOWN);
+    }
+  }
+
+  @Override
+  public Kind visitVariableExpr(Expr.Variable expr) {
+    return tag(expr, variables.read(expr.name));
+  }
+
+  @Override
+  public Kind visitBinaryVarsExpr(Expr.BinaryVars expr) {
+    Kind left = variables.read(expr.left);
+    return tag(expr, binary(expr.operator, left, variables.read(expr.right)));
+  }
+
+  @Override
+  public Kind visitBinaryVarLiteralExpr(Expr.BinaryVarLiteral expr) {
+    return tag(expr, binary(expr.operator, variables.read(expr.left), Kind.of(expr.value)));
+  }
+}
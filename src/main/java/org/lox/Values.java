@@ -0,0 +1,54 @@
+package org.lox;
+
+/**
+ * What Lox makes of its values, shared by Interpreter, BatchEvaluator and
+ * CompiledExpression so that all three agree: which values are truthy,
+ * which are equal, which operands the operators accept, and the error
+ * raised when they are not.
+ */
+final class Values {
+  static final String NUMBER_OPERAND = "Operand must be a number.";
+  static final String NUMBER_OPERANDS = "Operands must be numbers.";
+  static final String PLUS_OPERANDS = "Operands can be either numbers or strings.";
+
+  private Values() {
+  }
+
+  static boolean isTruthy(Object object) {
+    if (object == null)
+      return false;
+    if (object instanceof Boolean)
+      return (boolean) object;
+    return true;
+  }
+
+  static boolean isEqual(Object lhs, Object rhs) {
+    if (lhs == null)
+      return rhs == null;
+    return lhs.equals(rhs);
+  }
+
+  static void checkNumberOperand(Token operator, Object operand) {
+    if (operand instanceof Double)
+      return;
+    throw new RuntimeError(operator, NUMBER_OPERAND);
+  }
+
+  static void checkNumberOperands(Token operator, Object left, Object right) {
+    if (left instanceof Double && right instanceof Double)
+      return;
+    throw new RuntimeError(operator, NUMBER_OPERANDS);
+  }
+
+  /**
+   * Adds two numbers or concatenates two strings. Callers that limit how
+   * much string data a run creates handle two strings themselves first.
+   */
+  static Object plus(Token operator, Object left, Object right) {
+    if (left instanceof Double && right instanceof Double)
+      return (double) left + (double) right;
+    if (left instanceof String && right instanceof String)
+      return (String) left + (String) right;
+    throw new RuntimeError(operator, PLUS_OPERANDS);
+  }
+}
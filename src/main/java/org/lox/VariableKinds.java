@@ -0,0 +1,113 @@
+package org.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What a forward pass knows about the variables declared in a program: the
+ * kind of value each one in scope holds. DeadCodeEliminator and
+ * TypeInference both walk the program in execution order and keep one of
+ * these, telling it about scopes, declarations, assignments and ternary
+ * branches as they meet them.
+ *
+ * An assignment inside a ternary branch only may happen, so the kind it
+ * assigns is joined with what the variable held before.
+ */
+final class VariableKinds {
+  enum Kind {
+    NUMBER,
+    STRING,
+    BOOL,
+    // Not nil, but of no single known type.
+    VALUE,
+    NIL,
+    UNKNOWN;
+
+    Kind join(Kind other) {
+      if (this == other)
+        return this;
+      if (this.isValue() && other.isValue())
+        return VALUE;
+      return UNKNOWN;
+    }
+
+    boolean isValue() {
+      return this == NUMBER || this == STRING || this == BOOL || this == VALUE;
+    }
+
+    // Known to be a value that is not a number.
+    boolean isNotNumber() {
+      return this == STRING || this == BOOL || this == NIL;
+    }
+
+    static Kind of(Object value) {
+      if (value == null)
+        return NIL;
+      if (value instanceof Double)
+        return NUMBER;
+      if (value instanceof String)
+        return STRING;
+      if (value instanceof Boolean)
+        return BOOL;
+      return VALUE;
+    }
+  }
+
+  private final Deque<Map<Integer, Kind>> scopes = new ArrayDeque<>();
+  // Greater than zero while inside a ternary branch.
+  private int conditional = 0;
+
+  VariableKinds() {
+    scopes.push(new HashMap<>());
+  }
+
+  void beginScope() {
+    scopes.push(new HashMap<>());
+  }
+
+  void endScope() {
+    scopes.pop();
+  }
+
+  void beginBranch() {
+    conditional++;
+  }
+
+  void endBranch() {
+    conditional--;
+  }
+
+  void declare(Token name, Kind kind) {
+    scopes.peek().put(name.symbol, kind);
+  }
+
+  void assigned(Token name, Kind kind) {
+    for (Map<Integer, Kind> scope : scopes) {
+      Kind previous = scope.get(name.symbol);
+      if (previous != null) {
+        scope.put(name.symbol, conditional > 0 ? previous.join(kind) : kind);
+        return;
+      }
+    }
+  }
+
+  Kind lookup(Token name) {
+    for (Map<Integer, Kind> scope : scopes) {
+      Kind kind = scope.get(name.symbol);
+      if (kind != null)
+        return kind;
+    }
+    return Kind.UNKNOWN;
+  }
+
+  /**
+   * The kind a read of name yields when it completes. That is never nil,
+   * since reading an undefined or nil variable raises an error instead.
+   */
+  Kind read(Token name) {
+    Kind kind = lookup(name);
+    return kind.isValue() ? kind : Kind.VALUE;
+  }
+}
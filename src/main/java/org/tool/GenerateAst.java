@@ -20,18 +20,35 @@ public class GenerateAst {
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Unary    : Token operator, Expr right",
-            "Variable : Token name"
+            "Variable : Token name",
+            // Fused nodes, only ever built by Fuser.
+            "BinaryVars : Token left, Token operator, Token right",
+            "BinaryVarLiteral : Token left, Token operator, Object value"
+        ), Arrays.asList(
+            "// Written by TypeInference.",
+            "VariableKinds.Kind type = VariableKinds.Kind.UNKNOWN"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
             "Block : List<Stmt> statements",
             "Expression : Expr expression",
-            "Print : Expr expression",
+            "Print : Token keyword, Expr expression",
             "Var : Token name, Expr initializer"
-        ));
+        ), List.of());
     }
 
-    public static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
+    /**
+     * Writes the AST for baseName as a sealed abstract class with final
+     * nested subclasses, so the interpreter can dispatch on the exact node
+     * class as well as through the visitor. baseFields are mutable fields,
+     * and comments, of the base class.
+     *
+     * Records are not an option: every pass reads node fields directly and
+     * TypeInference writes the mutable type field, neither of which a
+     * record implementing a sealed interface can offer.
+     */
+    public static void defineAst(String outputDir, String baseName, List<String> types,
+        List<String> baseFields) throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, "UTF-8");
 
@@ -39,10 +56,14 @@ public class GenerateAst {
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("abstract class " + baseName + "{");
+        writer.println("abstract sealed class " + baseName + "{");
 
         defineVisitor(writer, baseName, types);
 
+        for (String field : baseFields) {
+            writer.println(field.startsWith("//") ? "  " + field : "  " + field + ";");
+        }
+
         for (String type: types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
@@ -69,7 +90,7 @@ public class GenerateAst {
     private static void defineType(
         PrintWriter writer, String baseName,
         String className, String fieldList) {
-        writer.println("  static class " + className + " extends " +
+        writer.println("  static final class " + className + " extends " +
             baseName + " {");
 
         // Constructor.
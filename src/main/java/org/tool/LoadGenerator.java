@@ -0,0 +1,116 @@
+package org.tool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a `jlox --serve` server with one script from several connections
+ * at once and reports throughput and latency percentiles.
+ */
+public class LoadGenerator {
+    private static final int OUT = 1;
+    private static final int ERR = 2;
+    private static final int EXIT = 3;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: load_generator <port | socket path> <script> [connections] [requests]");
+            System.exit(64);
+        }
+        String address = args[0];
+        byte[] script = Files.readAllBytes(Path.of(args[1]));
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        long[] latencies = new long[connections * requests];
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] clients = new Thread[connections];
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int offset = c * requests;
+            clients[c] = new Thread(() -> {
+                try {
+                    drive(address, script, requests, latencies, offset, failures);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.printf("requests     %d (%d failed)%n", latencies.length, failures.get());
+        System.out.printf("throughput   %.1f req/s%n", latencies.length / (elapsed / 1e9));
+        System.out.printf("p50          %.3f ms%n", percentile(latencies, 0.50) / 1e6);
+        System.out.printf("p99          %.3f ms%n", percentile(latencies, 0.99) / 1e6);
+        System.out.printf("max          %.3f ms%n", latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static void drive(String address, byte[] script, int requests,
+            long[] latencies, int offset, AtomicInteger failures) throws IOException {
+        try (SocketChannel channel = connect(address)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                out.writeInt(script.length);
+                out.write(script);
+                out.flush();
+                if (readReply(in) != 0) {
+                    failures.incrementAndGet();
+                }
+                latencies[offset + i] = System.nanoTime() - start;
+            }
+        }
+    }
+
+    // Skips the output frames and returns the exit code.
+    private static int readReply(DataInputStream in) throws IOException {
+        for (;;) {
+            int tag = in.readByte();
+            if (tag == EXIT) {
+                return in.readInt();
+            }
+            if (tag != OUT && tag != ERR) {
+                throw new IOException("Unexpected frame " + tag);
+            }
+            in.skipNBytes(in.readInt());
+        }
+    }
+
+    private static SocketChannel connect(String address) throws IOException {
+        if (address.chars().allMatch(Character::isDigit)) {
+            SocketAddress remote = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+            SocketChannel channel = SocketChannel.open(remote);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return channel;
+        }
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(address));
+        return channel;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,13 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class AstPrinterTest {
+  @Test
+  void printsDeepExpressionsLikeTheOldPrinter() {
+    Expr tree = Benchmark.deepExpression(400);
+    assertEquals(Benchmark.legacyPrint(tree), new AstPrinter().print(tree));
+  }
+}
@@ -0,0 +1,69 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class BatchEvaluatorTest {
+  // A few chunks' worth, the last of them partly filled.
+  private static final int ROWS = 5_000;
+
+  @Test
+  void pricingMatchesTheInterpreter() {
+    check(Benchmark.parse(Benchmark.PRICING));
+  }
+
+  @Test
+  void fusedPricingMatchesTheInterpreter() {
+    check(Fuser.fuse(Benchmark.parse(Benchmark.PRICING)));
+  }
+
+  @Test
+  void numericMatchesTheInterpreter() {
+    check(Benchmark.parse(Benchmark.NUMERIC));
+  }
+
+  @Test
+  void fusedNumericMatchesTheInterpreter() {
+    check(Fuser.fuse(Benchmark.parse(Benchmark.NUMERIC)));
+  }
+
+  // Every row's output, error and result of total against a run of the
+  // interpreter on that row alone.
+  private static void check(List<Stmt> statements) {
+    double[] price = new double[ROWS];
+    double[] qty = new double[ROWS];
+    String[] name = new String[ROWS];
+    Benchmark.batchRows(price, qty, name);
+    BatchEvaluator.Result result = new BatchEvaluator(statements)
+        .evaluate(ROWS, Map.of("price", price, "qty", qty), Map.of("name", name));
+
+    for (int row = 0; row < ROWS; row++) {
+      Environment globals = new Environment();
+      globals.define("price", price[row]);
+      globals.define("qty", qty[row]);
+      globals.define("name", name[row]);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Diagnostics diagnostics = new Diagnostics();
+      new Interpreter(diagnostics, globals, new PrintStream(out)).interpret(statements);
+
+      String where = "row " + row;
+      assertEquals(out.toString(), result.output(row), where);
+      RuntimeError error = result.error(row);
+      assertEquals(diagnostics.hadRuntimeError(), error != null, where);
+      if (error != null) {
+        Diagnostics.Diagnostic diagnostic = diagnostics.all().get(0);
+        assertEquals(diagnostic.line(), error.token.line, where);
+        assertEquals(diagnostic.message(), error.getMessage(), where);
+      } else {
+        assertEquals(globals.get(new Token(Token.TokenType.IDENTIFIER, "total", null, 0)),
+            result.value("total", row), where);
+      }
+    }
+  }
+}
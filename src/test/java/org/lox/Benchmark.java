@@ -0,0 +1,702 @@
+package org.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Micro benchmarks for the interpreter. Run with the benchmark name as the
+ * first argument, e.g.
+ *
+ *   java -cp target/classes:target/test-classes org.lox.Benchmark dispatch
+ *
+ * after `mvn test-compile`. The tests check that what is timed here gives
+ * the same results both ways.
+ */
+public class Benchmark {
+  private static final int WARMUP = 20;
+  private static final int RUNS = 50;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      usage();
+    }
+
+    switch (args[0]) {
+      case "dispatch":
+        dispatch();
+        break;
+      case "pipeline":
+        pipeline();
+        break;
+      case "scan":
+        scan();
+        break;
+      case "parse":
+        parse();
+        break;
+      case "budget":
+        budget();
+        break;
+      case "fork":
+        fork();
+        break;
+      case "stringify":
+        stringify();
+        break;
+      case "coverage":
+        coverage();
+        break;
+      case "incremental":
+        incremental();
+        break;
+      case "concurrent":
+        concurrent();
+        break;
+      case "print":
+        print();
+        break;
+      case "intern":
+        intern();
+        break;
+      case "fusion":
+        fusion();
+        break;
+      case "types":
+        types();
+        break;
+      case "batch":
+        batch();
+        break;
+      case "compiled":
+        compiled();
+        break;
+      case "cache":
+        cache();
+        break;
+      case "trace":
+        trace();
+        break;
+      case "snapshot":
+        snapshot();
+        break;
+      default:
+        usage();
+    }
+  }
+
+  private static void usage() {
+    System.out.println("Usage: benchmark dispatch | pipeline | scan | parse | budget | fork | stringify | coverage");
+    System.out.println("                 | incremental | concurrent | print | intern");
+    System.out.println("                 | fusion | types | batch | compiled | cache | trace");
+    System.out.println("                 | snapshot");
+    System.exit(64);
+  }
+
+  // Visitor accept() against exact-class dispatch on the sealed hierarchy.
+  private static void dispatch() {
+    List<Stmt> statements = parse(arithmeticProgram(2_000));
+
+    report("dispatch visitor", time(() -> new Interpreter(new Diagnostics(), false).interpret(statements)));
+    report("dispatch switch", time(() -> new Interpreter(new Diagnostics(), true).interpret(statements)));
+  }
+
+  // Sequential scan then parse against scanning and parsing on two threads.
+  private static void pipeline() {
+    String source = arithmeticProgram(10_000);
+
+    report("pipeline sequential", time(() -> parse(source)));
+    report("pipeline threaded", time(() -> Pipeline.parse(source, new Diagnostics())));
+  }
+
+  // Sequential against fork-join scanning.
+  private static void scan() {
+    String source = scanProgram(20_000);
+
+    report("scan sequential", time(() -> new Scanner(source, new Diagnostics()).scanTokens()));
+    report("scan parallel", time(() -> ParallelScanner.scanTokens(source, new Diagnostics())));
+  }
+
+  // Sequential against parallel parsing of 40,000 top-level statements.
+  private static void parse() {
+    List<Token> tokens = new Scanner(arithmeticProgram(20_000), new Diagnostics()).scanTokens();
+
+    report("parse sequential", time(() -> new Parser(tokens, new Diagnostics()).parse()));
+    report("parse parallel", time(() -> ParallelParser.parse(tokens, new Diagnostics())));
+  }
+
+  // Cost of enforcing every budget against running unbounded.
+  private static void budget() {
+    List<Stmt> statements = parse(arithmeticProgram(2_000));
+    Budget limits = Budget.UNLIMITED
+        .withMaxSteps(Long.MAX_VALUE - 1)
+        .withMaxNanos(3_600_000_000_000L)
+        .withMaxDepth(1_000)
+        .withMaxStringBytes(1 << 30);
+
+    report("budget unlimited", time(() -> new Interpreter(new Diagnostics()).interpret(statements)));
+    report("budget limited", time(() -> {
+      Interpreter interpreter = new Interpreter(new Diagnostics());
+      interpreter.setBudget(limits);
+      interpreter.interpret(statements);
+    }));
+  }
+
+  // Per-request globals: re-running a prelude against forking a snapshot.
+  private static void fork() {
+    List<Stmt> prelude = parse(arithmeticProgram(5_000));
+    List<Stmt> request = parse("a1 = a2 + a3; var mine = a4 * 2;");
+
+    report("fork rerun prelude", time(() -> {
+      Interpreter interpreter = new Interpreter(new Diagnostics());
+      interpreter.interpret(prelude);
+      interpreter.interpret(request);
+    }));
+
+    Interpreter warm = new Interpreter(new Diagnostics());
+    warm.interpret(prelude);
+    Environment snapshot = warm.snapshotGlobals();
+    report("fork snapshot", time(() ->
+        new Interpreter(new Diagnostics(), snapshot.fork()).interpret(request)));
+  }
+
+  // Running with line coverage collected against running without.
+  private static void coverage() {
+    List<Stmt> statements = parse(arithmeticProgram(2_000));
+
+    report("coverage off", time(() -> new Interpreter(new Diagnostics()).interpret(statements)));
+    report("coverage on", time(() -> {
+      Interpreter interpreter = new Interpreter(new Diagnostics());
+      interpreter.setCoverage(new Coverage("benchmark"));
+      interpreter.interpret(statements);
+    }));
+  }
+
+  // Re-parsing a 40,000 statement script after a small edit from scratch
+  // against re-parsing only the declarations that changed. Adding a line
+  // also shifts the lines of every declaration after it.
+  private static void incremental() {
+    String before = arithmeticProgram(20_000);
+    String edited = before.replace("var a10000 = 10000;", "var a10000 = 12345;");
+    String added = before.replace("var a10000 = 10000;", "var a10000 = 10000;\nvar extra = a10000;");
+
+    report("incremental full", time(() -> parse(edited)));
+    report("incremental edit", time(editing(before, edited)));
+    report("incremental new line", time(editing(before, added)));
+  }
+
+  // Each run switches the parser to the other version.
+  private static Runnable editing(String before, String after) {
+    IncrementalParser parser = new IncrementalParser();
+    parser.update(before, new Diagnostics());
+    String[] versions = {after, before};
+    int[] runs = {0};
+    return () -> parser.update(versions[runs[0]++ % 2], new Diagnostics());
+  }
+
+  // Sequential against dependency-ordered concurrent execution of
+  // statements on mostly disjoint globals.
+  private static void concurrent() {
+    List<Stmt> statements = parse(concurrentProgram(2_000));
+
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    report("concurrent sequential", time(() ->
+        new Interpreter(new Diagnostics(), new Environment(), discard).interpret(statements, true)));
+    report("concurrent dag", time(() ->
+        ConcurrentExecutor.interpret(statements, true, new SynchronizedEnvironment(), new Diagnostics(), discard)));
+  }
+
+  // Heap held by the trees of a repetitive script, plain and hash-consed,
+  // and the time interning adds to parsing.
+  private static void intern() {
+    String source = repetitiveProgram(20_000);
+
+    long baseline = heapUsed();
+    List<Stmt> plain = parse(source);
+    reportHeap("intern heap plain", heapUsed() - baseline);
+    Interner interner = new Interner();
+    List<Stmt> interned = interner.intern(plain);
+    plain = null;
+    // Includes the interner's tables, which relocate() needs.
+    reportHeap("intern heap interned", heapUsed() - baseline);
+    System.out.printf("%-24s %10d shared, %d kept%n", "intern nodes", interner.reused(), interner.created());
+    // Keeps the interned trees alive until here.
+    interned.size();
+
+    report("intern parse", time(() -> parse(source)));
+    report("intern parse and intern", time(() -> new Interner().intern(parse(source))));
+  }
+
+  // Running without an ExecutionTrace against the default of recording
+  // one.
+  private static void trace() {
+    long[] fastest = traceTimes();
+    report("trace off", fastest[0]);
+    report("trace on", fastest[1]);
+    System.out.printf("%-24s %10.1f %%%n", "trace overhead", 100.0 * (fastest[1] - fastest[0]) / fastest[0]);
+  }
+
+  /**
+   * The fastest run without and with an ExecutionTrace. The difference is
+   * small next to the noise, which comes in bursts, so the two take turns a
+   * run at a time.
+   */
+  static long[] traceTimes() {
+    List<Stmt> statements = parse(arithmeticProgram(2_000) + repetitiveProgram(500));
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    Runnable untraced = () -> {
+      Interpreter run = new Interpreter(new Diagnostics(), new Environment(), discard);
+      run.setTrace(null);
+      run.interpret(statements);
+    };
+    Runnable traced = () -> new Interpreter(new Diagnostics(), new Environment(), discard).interpret(statements);
+    time(untraced);
+    time(traced);
+    long off = Long.MAX_VALUE;
+    long on = Long.MAX_VALUE;
+    for (int i = 0; i < 500; i++) {
+      long start = System.nanoTime();
+      untraced.run();
+      long middle = System.nanoTime();
+      traced.run();
+      off = Math.min(off, middle - start);
+      on = Math.min(on, System.nanoTime() - middle);
+    }
+    return new long[] {off, on};
+  }
+
+  // Evaluation with operand checks against evaluation skipping those
+  // TypeInference proved to pass.
+  private static void types() {
+    String source = arithmeticProgram(2_000) + repetitiveProgram(500);
+    List<Stmt> checked = parse(source);
+    List<Stmt> inferred = parse(source);
+    TypeInference.infer(inferred, new Diagnostics());
+
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    Runnable runChecked = () -> new Interpreter(new Diagnostics(), new Environment(), discard).interpret(checked);
+    Runnable runInferred = () -> new Interpreter(new Diagnostics(), new Environment(), discard).interpret(inferred);
+    // Both share the interpreter's code, which the JIT compiles for
+    // whichever runs first, so both are warmed up before either is timed.
+    for (int i = 0; i < 2; i++) {
+      time(runChecked);
+      time(runInferred);
+    }
+    report("types checked", time(runChecked));
+    report("types inferred", time(runInferred));
+  }
+
+  // One Interpreter run per row against BatchEvaluator over all of them.
+  private static void batch() {
+    int rows = 100_000;
+    double[] price = new double[rows];
+    double[] qty = new double[rows];
+    String[] name = new String[rows];
+    batchRows(price, qty, name);
+    Map<String, double[]> numbers = Map.of("price", price, "qty", qty);
+    Map<String, String[]> strings = Map.of("name", name);
+
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    for (String source : List.of(PRICING, NUMERIC)) {
+      String label = source == PRICING ? "pricing" : "numeric";
+      List<Stmt> statements = parse(source);
+      report("batch " + label + " row by row", time(() -> {
+        for (int row = 0; row < rows; row++) {
+          Environment globals = new Environment();
+          globals.define("price", price[row]);
+          globals.define("qty", qty[row]);
+          globals.define("name", name[row]);
+          new Interpreter(new Diagnostics(), globals, discard).interpret(statements);
+        }
+      }));
+      BatchEvaluator evaluator = new BatchEvaluator(statements);
+      report("batch " + label + " columnar", time(() -> evaluator.evaluate(rows, numbers, strings)));
+    }
+  }
+
+  // Running a script against replaying its ResultCache entry from disk and
+  // from memory.
+  private static void cache() throws IOException {
+    Path directory = Files.createTempDirectory("jlox-cache");
+    try {
+      String source = arithmeticProgram(2_000) + repetitiveProgram(200);
+      Runnable run = () -> {
+        List<Token> tokens = new Scanner(source, new Diagnostics()).scanTokens();
+        new Interpreter(new Diagnostics(), new Environment(), new PrintStream(new ByteArrayOutputStream()))
+            .interpret(new Parser(tokens, new Diagnostics()).parse(), true);
+      };
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new Interpreter(new Diagnostics(), new Environment(), new PrintStream(out)).interpret(parse(source), true);
+      new ResultCache(directory).put(ResultCache.key(source, ""), new ResultCache.Result(out.toByteArray(), new byte[0], 0));
+
+      // Without memory every hit reads the file.
+      ResultCache disk = new ResultCache(directory, 0, ResultCache.DISK_BYTES);
+      ResultCache memory = new ResultCache(directory);
+      report("cache run", time(run));
+      report("cache disk hit", time(() -> disk.get(ResultCache.key(source, ""))));
+      report("cache memory hit", time(() -> memory.get(ResultCache.key(source, ""))));
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  // Starting from a 100,000 global prelude by running it against restoring
+  // a snapshot of it.
+  private static void snapshot() throws IOException {
+    String source = prelude(100_000);
+    Path file = Files.createTempFile("jlox", ".snap");
+    try {
+      Interpreter interpreter = new Interpreter(new Diagnostics());
+      interpreter.interpret(parse(source));
+      Snapshot.write(interpreter.snapshotGlobals(), file);
+
+      System.out.printf("%-24s %10.3f MB%n", "snapshot size", Files.size(file) / 1e6);
+      report("snapshot run prelude", time(() -> {
+        Diagnostics diagnostics = new Diagnostics();
+        List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+        new Interpreter(diagnostics).interpret(new Parser(tokens, diagnostics).parse());
+      }));
+      report("snapshot restore", time(() -> {
+        try {
+          Snapshot.read(file);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  // Per-evaluation latency of scanning, parsing and interpreting a formula
+  // every time against a CompiledExpression, through a map and through
+  // slots.
+  private static void compiled() {
+    Map<String, Object> bindings = FORMULA_BINDINGS;
+    String formula = FORMULAS.get(0);
+    CompiledExpression compiled = CompiledExpression.compile(formula);
+    Object[] values = new Object[compiled.variables().size()];
+    for (int slot = 0; slot < values.length; slot++) {
+      values[slot] = bindings.get(compiled.variables().get(slot));
+    }
+    int evaluations = 10_000;
+    reportEvaluation("compiled reparse", time(() -> {
+      for (int i = 0; i < evaluations; i++) {
+        Environment globals = new Environment();
+        bindings.forEach(globals::define);
+        List<Token> tokens = new Scanner(formula + ";", new Diagnostics()).scanTokens();
+        new Interpreter(new Diagnostics(), globals).interpret(new Parser(tokens, new Diagnostics()).parse());
+      }
+    }) / evaluations);
+    reportEvaluation("compiled map", time(() -> {
+      for (int i = 0; i < evaluations; i++) {
+        compiled.evaluate(bindings);
+      }
+    }) / evaluations);
+    reportEvaluation("compiled slots", time(() -> {
+      for (int i = 0; i < evaluations; i++) {
+        compiled.evaluate(values);
+      }
+    }) / evaluations);
+  }
+
+  static void reportEvaluation(String name, long nanos) {
+    System.out.printf("%-24s %10d ns/eval%n", name, nanos);
+  }
+
+  // Counts node shapes over the benchmark programs, which is where Fuser's
+  // catalogue comes from, then times a program made of each fused pattern
+  // as parsed against fused.
+  private static void fusion() {
+    Map<String, Integer> shapes = new HashMap<>();
+    for (String source : List.of(arithmeticProgram(2_000), repetitiveProgram(2_000))) {
+      for (Stmt stmt : parse(source)) {
+        countShapes(stmt, shapes);
+      }
+    }
+    shapes.entrySet().stream()
+        .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+        .limit(8)
+        .forEach(shape -> System.out.printf("%-40s %8d%n", shape.getKey(), shape.getValue()));
+
+    Map<Fuser.Pattern, String> programs = new LinkedHashMap<>();
+    programs.put(Fuser.Pattern.GROUPING, "var a = 1;\n" + "(-a);\n".repeat(5_000));
+    programs.put(Fuser.Pattern.BINARY_VARS, "var a = 1; var b = 2;\n" + "a < b;\n".repeat(5_000));
+    programs.put(Fuser.Pattern.BINARY_VAR_LITERAL, "var a = 1;\n" + "a * 2;\n".repeat(5_000));
+
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    for (Map.Entry<Fuser.Pattern, String> program : programs.entrySet()) {
+      String name = program.getKey().name().toLowerCase();
+      List<Stmt> plain = parse(program.getValue());
+      List<Stmt> fused = Fuser.fuse(plain);
+
+      report("fusion " + name + " plain", time(() ->
+          new Interpreter(new Diagnostics(), new Environment(), discard).interpret(plain)));
+      report("fusion " + name + " fused", time(() ->
+          new Interpreter(new Diagnostics(), new Environment(), discard).interpret(fused)));
+    }
+  }
+
+  // Shapes are a node class with the classes of its children.
+  private static void countShapes(Stmt stmt, Map<String, Integer> shapes) {
+    if (stmt instanceof Stmt.Block block) {
+      for (Stmt statement : block.statements) {
+        countShapes(statement, shapes);
+      }
+      return;
+    }
+    Expr expr = null;
+    if (stmt instanceof Stmt.Expression expression)
+      expr = expression.expression;
+    if (stmt instanceof Stmt.Print print)
+      expr = print.expression;
+    if (stmt instanceof Stmt.Var var)
+      expr = var.initializer;
+    if (expr == null)
+      return;
+    shapes.merge(stmt.getClass().getSimpleName() + "(" + expr.getClass().getSimpleName() + ")", 1, Integer::sum);
+    countShapes(expr, shapes);
+  }
+
+  private static void countShapes(Expr expr, Map<String, Integer> shapes) {
+    List<Expr> children = new ArrayList<>();
+    if (expr instanceof Expr.Assign assign)
+      children.add(assign.value);
+    if (expr instanceof Expr.Binary binary)
+      children.addAll(List.of(binary.left, binary.right));
+    if (expr instanceof Expr.Ternary ternary)
+      children.addAll(List.of(ternary.first, ternary.second, ternary.last));
+    if (expr instanceof Expr.Grouping grouping)
+      children.add(grouping.expression);
+    if (expr instanceof Expr.Unary unary)
+      children.add(unary.right);
+    if (children.isEmpty())
+      return;
+
+    StringBuilder shape = new StringBuilder(expr.getClass().getSimpleName()).append("(");
+    for (Expr child : children) {
+      shape.append(shape.charAt(shape.length() - 1) == '(' ? "" : ", ").append(child.getClass().getSimpleName());
+      countShapes(child, shapes);
+    }
+    shapes.merge(shape.append(")").toString(), 1, Integer::sum);
+  }
+
+  // Printing a deep expression by building a string per node against
+  // streaming it into one builder.
+  private static void print() {
+    Expr tree = deepExpression(400);
+
+    report("print legacy", time(() -> legacyPrint(tree)));
+    report("print streaming", time(() -> new AstPrinter(new StringBuilder()).write(tree)));
+  }
+
+  // The old AstPrinter, for the node types it handled.
+  static String legacyPrint(Expr expr) {
+    if (expr instanceof Expr.Binary binary)
+      return legacyParenthesize(binary.operator.lexeme, binary.left, binary.right);
+    if (expr instanceof Expr.Grouping grouping)
+      return legacyParenthesize("group", grouping.expression);
+    if (expr instanceof Expr.Unary unary)
+      return legacyParenthesize(unary.operator.lexeme, unary.right);
+    if (expr instanceof Expr.Literal literal)
+      return literal.value == null ? "nil" : literal.value.toString();
+    if (expr instanceof Expr.Variable variable)
+      return variable.name.lexeme;
+    throw new UnsupportedOperationException();
+  }
+
+  private static String legacyParenthesize(String name, Expr... exprs) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("(").append(name);
+    for (Expr expr : exprs) {
+      builder.append(" ");
+      builder.append(legacyPrint(expr));
+    }
+    builder.append(")");
+    return builder.toString();
+  }
+
+  // NumberFormatter against the old Double.toString() based stringify.
+  private static void stringify() {
+    double[] values = new double[100_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 2 == 0 ? i : i / 4.0;
+    }
+    report("stringify legacy", time(() -> {
+      for (double value : values) legacyStringify(value);
+    }));
+    report("stringify formatter", time(() -> {
+      for (double value : values) NumberFormatter.format(value);
+    }));
+  }
+
+  static String legacyStringify(double value) {
+    String text = Double.toString(value);
+    if (text.endsWith(".0"))
+      text = text.substring(0, text.length() - 2);
+    return text;
+  }
+
+  // A program with an expression column for BatchEvaluator: prints, local
+  // shadowing, strings, nil names, errors on some rows and not others.
+  static final String PRICING = String.join("\n",
+      "var subtotal = price * qty;",
+      "var discount = subtotal > 100 ? subtotal * 0.1 : 0;",
+      "var total = subtotal - discount;",
+      "{ var total = \"inner\"; print total + \" \" + name; }",
+      "var label = qty > 5 ? name + \" (bulk)\" : name;",
+      "print label;",
+      "total = total < 0 ? -total : total;",
+      "print total == subtotal;",
+      "qty > 8 ? (discount = \"big\") : (qty < 1 ? missing : 0);",
+      "print discount + 1;",
+      "total = total + 1;",
+      "print !(qty > 3);",
+      "print total;");
+
+  static final String NUMERIC = String.join("\n",
+      "var subtotal = price * qty;",
+      "var total = subtotal > 100 ? subtotal * 0.9 : subtotal;",
+      "total = (total + 2.5) / 2 - -price;");
+
+  static final List<String> FORMULAS = List.of(
+      "price * qty > 100 ? price * qty * 0.9 : price * qty + fee",
+      "name + \" x\" + (qty == 3 ? \"three\" : \"other\")",
+      "!(price < fee) == (qty >= 2)",
+      "fee = fee * 2, fee - -price / qty",
+      "price - name",
+      "missing + 1");
+
+  static final Map<String, Object> FORMULA_BINDINGS = Map.of(
+      "price", 40.0, "qty", 3.0, "fee", 5.0, "name", "widget");
+
+  // Fills the batch columns with the same pseudo-random rows every time.
+  static void batchRows(double[] price, double[] qty, String[] name) {
+    Random random = new Random(42);
+    for (int row = 0; row < price.length; row++) {
+      price[row] = random.nextInt(10_000) / 100.0 - 5;
+      qty[row] = random.nextInt(11);
+      name[row] = row % 97 == 0 ? null : "item" + row;
+    }
+  }
+
+  // Strings spanning lines, comments holding quotes and errors, so chunk
+  // boundaries fall everywhere a scanner can be.
+  static String scanProgram(int count) {
+    StringBuilder builder = new StringBuilder(arithmeticProgram(count));
+    for (int i = 0; i < count; i++) {
+      builder.append("var s").append(i).append(" = \"multi\nline // not a comment\";\n");
+      builder.append("// comment with \" quote\n@\n");
+    }
+    builder.append("print \"unterminated\n\n");
+    return builder.toString();
+  }
+
+  // Mostly independent statements, with prints reading two globals each.
+  static String concurrentProgram(int count) {
+    StringBuilder builder = new StringBuilder(arithmeticProgram(count));
+    for (int i = 0; i < count; i += 7) {
+      builder.append("print a").append(i).append(" + a").append(i + 1).append(";\n");
+    }
+    return builder.toString();
+  }
+
+  // count numbers, and a string for every fourth and a bool for every
+  // sixteenth of them.
+  static String prelude(int count) {
+    StringBuilder prelude = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      prelude.append("var n").append(i).append(" = ").append(i).append(" * 1.5;\n");
+      if (i % 4 == 0)
+        prelude.append("var s").append(i).append(" = \"name ").append(i).append("\";\n");
+      if (i % 16 == 0)
+        prelude.append("var b").append(i).append(" = n").append(i).append(" > 100;\n");
+    }
+    return prelude.toString();
+  }
+
+  // An expression nested levels deep, built directly, since the parser
+  // would run out of stack first.
+  static Expr deepExpression(int levels) {
+    Token minus = new Token(Token.TokenType.MINUS, "-", null, 1);
+    Token plus = new Token(Token.TokenType.PLUS, "+", null, 1);
+    Token star = new Token(Token.TokenType.STAR, "*", null, 1);
+    Expr.Variable x = new Expr.Variable(new Token(Token.TokenType.IDENTIFIER, "x", null, 1));
+    Expr deep = new Expr.Literal(0.0);
+    for (int i = 0; i < levels; i++) {
+      Expr term = new Expr.Binary(new Expr.Literal((double) i), star, x);
+      deep = new Expr.Unary(minus, new Expr.Grouping(new Expr.Binary(term, plus, deep)));
+    }
+    return deep;
+  }
+
+  static String arithmeticProgram(int count) {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      source.append("var a").append(i).append(" = ").append(i).append(";\n");
+      source.append("{ var b = a").append(i).append(" * 2 + (a").append(i)
+          .append(" - 1) / 3; a").append(i).append(" = b > 4 ? b : -b; }\n");
+    }
+    return source.toString();
+  }
+
+  static String repetitiveProgram(int count) {
+    StringBuilder source = new StringBuilder("var price = 3; var rate = 2; var fee = 1; var total = 0;\n");
+    for (int i = 0; i < count; i++) {
+      source.append("var t").append(i).append(" = (price * rate) + fee;\n");
+      source.append("print (price * rate) + fee > 6 ? \"high\" : \"low\";\n");
+      source.append("total = total + (price * rate) + fee;\n");
+    }
+    return source.toString();
+  }
+
+  static List<Stmt> parse(String source) {
+    Diagnostics diagnostics = new Diagnostics();
+    List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+    return new Parser(tokens, diagnostics).parse();
+  }
+
+  // Average nanoseconds per run after a warmup.
+  static long time(Runnable body) {
+    for (int i = 0; i < WARMUP; i++) {
+      body.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < RUNS; i++) {
+      body.run();
+    }
+    return (System.nanoTime() - start) / RUNS;
+  }
+
+  static long heapUsed() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  static void reportHeap(String name, long bytes) {
+    System.out.printf("%-24s %10.3f MB%n", name, bytes / 1e6);
+  }
+
+  static void report(String name, long nanos) {
+    System.out.printf("%-24s %10.3f ms/op%n", name, nanos / 1e6);
+  }
+}
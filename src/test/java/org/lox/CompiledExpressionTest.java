@@ -0,0 +1,76 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class CompiledExpressionTest {
+  @Test
+  void evaluatesLikeTheInterpreterFromSeveralThreads() throws InterruptedException {
+    Map<String, Object> bindings = Benchmark.FORMULA_BINDINGS;
+    for (String formula : Benchmark.FORMULAS) {
+      CompiledExpression compiled = CompiledExpression.compile(formula);
+      String expected = interpret(formula, bindings);
+      String[] mismatch = new String[4];
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < mismatch.length; i++) {
+        int index = i;
+        Thread thread = new Thread(() -> {
+          for (int n = 0; n < 1_000 && mismatch[index] == null; n++) {
+            String actual = evaluate(compiled, bindings);
+            if (!expected.equals(actual))
+              mismatch[index] = actual;
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      for (String actual : mismatch) {
+        assertNull(actual, formula);
+      }
+    }
+  }
+
+  @Test
+  void reportsSyntaxErrors() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> CompiledExpression.compile("price *"));
+    assertEquals("[line 1] Error at end: Expected expression.", e.getMessage());
+  }
+
+  // What the interpreter prints for formula as a REPL line, or its error.
+  private static String interpret(String formula, Map<String, Object> bindings) {
+    Environment globals = new Environment();
+    bindings.forEach(globals::define);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Diagnostics diagnostics = new Diagnostics();
+    List<Token> tokens = new Scanner(formula + ";", diagnostics).scanTokens();
+    new Interpreter(diagnostics, globals, new PrintStream(out))
+        .interpret(new Parser(tokens, diagnostics).parse(), true);
+    if (diagnostics.hadRuntimeError())
+      return diagnostics.all().get(0).message();
+    return out.toString().trim();
+  }
+
+  private static String evaluate(CompiledExpression compiled, Map<String, Object> bindings) {
+    try {
+      Object value = compiled.evaluate(bindings);
+      if (value == null)
+        return "nil";
+      return value instanceof Double ? NumberFormatter.format((double) value) : value.toString();
+    } catch (RuntimeError e) {
+      return e.getMessage();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentExecutorTest {
+  private static final String SOURCE = Benchmark.concurrentProgram(2_000);
+
+  @Test
+  void printsWhatTheInterpreterPrints() {
+    check(Benchmark.parse(SOURCE));
+  }
+
+  @Test
+  void stopsAtTheSameError() {
+    check(Benchmark.parse(SOURCE.replace("print a700 ", "print nope + a700 ")));
+  }
+
+  private static void check(List<Stmt> program) {
+    ByteArrayOutputStream sequentialOut = new ByteArrayOutputStream();
+    ByteArrayOutputStream concurrentOut = new ByteArrayOutputStream();
+    Diagnostics sequentialDiagnostics = new Diagnostics();
+    Diagnostics concurrentDiagnostics = new Diagnostics();
+    new Interpreter(sequentialDiagnostics, new Environment(), new PrintStream(sequentialOut, true))
+        .interpret(program, true);
+    ConcurrentExecutor.interpret(program, true, new SynchronizedEnvironment(),
+        concurrentDiagnostics, new PrintStream(concurrentOut, true));
+
+    assertEquals(sequentialOut.toString(), concurrentOut.toString());
+    assertEquals(sequentialDiagnostics.all(), concurrentDiagnostics.all());
+  }
+}
@@ -0,0 +1,49 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class ExecutionTraceTest {
+  @Test
+  void keepsOnlyTheLastEntriesOldestFirst() {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      source.append("var v").append(i).append(" = ").append(i).append(";\n");
+    }
+    Interpreter interpreter = new Interpreter(new Diagnostics(), new Environment(),
+        new PrintStream(OutputStream.nullOutputStream()));
+    interpreter.interpret(Benchmark.parse(source + "print v99 - \"a\";"));
+    String dump = interpreter.trace().dump();
+
+    assertTrue(dump.startsWith("Last statements run:\n  [line 86] var\n"), dump);
+    assertTrue(dump.endsWith("  [line 99] v98 = 98\n  [line 100] v99 = 99\n"), dump);
+    assertFalse(dump.contains("v83 ="), dump);
+  }
+
+  @Test
+  void reportsInternedStatementsOnTheirOwnLines() {
+    // The last statement shares its nodes with the second.
+    Interner interner = new Interner();
+    Interpreter interpreter = new Interpreter(new Diagnostics(), new Environment(),
+        new PrintStream(OutputStream.nullOutputStream()));
+    interpreter.setInterner(interner);
+    interpreter.interpret(interner.intern(Benchmark.parse("var a = 1;\na + 1;\nvar b = 2;\na = \"s\";\na + 1;\n")), true);
+
+    assertEquals("Last statements run:\n"
+        + "  [line 1] var\n"
+        + "  [line 2] expression\n"
+        + "  [line 3] var\n"
+        + "  [line 4] expression\n"
+        + "  [line 5] expression\n"
+        + "Last assignments:\n"
+        + "  [line 1] a = 1\n"
+        + "  [line 3] b = 2\n"
+        + "  [line 4] a = \"s\"\n", interpreter.trace().dump());
+  }
+}
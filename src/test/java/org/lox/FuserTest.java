@@ -0,0 +1,52 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FuserTest {
+  @Test
+  void dropsGroupings() {
+    check(Fuser.Pattern.GROUPING, "var a = 1;\n", "print (-a);\n");
+  }
+
+  @Test
+  void fusesTwoVariables() {
+    check(Fuser.Pattern.BINARY_VARS, "var a = 1; var b = 2;\n", "print a < b;\n");
+  }
+
+  @Test
+  void fusesAVariableAndALiteral() {
+    check(Fuser.Pattern.BINARY_VAR_LITERAL, "var a = 1;\n", "print a * 2;\n");
+  }
+
+  @Test
+  void raisesTheSameErrors() {
+    String source = "var a = \"s\";\nvar b = 2;\nprint (b);\nprint a - b;\n";
+    List<Stmt> plain = Benchmark.parse(source);
+    assertEquals(run(plain), run(Fuser.fuse(plain)));
+  }
+
+  // Each of count repeats of line is fused once, and the program prints
+  // the same.
+  private static void check(Fuser.Pattern pattern, String declarations, String line) {
+    int count = 100;
+    List<Stmt> plain = Benchmark.parse(declarations + line.repeat(count));
+    Fuser fuser = new Fuser();
+    List<Stmt> fused = fuser.rewrite(plain);
+
+    assertEquals(count, fuser.count(pattern));
+    assertEquals(run(plain), run(fused));
+  }
+
+  private static String run(List<Stmt> statements) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Diagnostics diagnostics = new Diagnostics();
+    new Interpreter(diagnostics, new Environment(), new PrintStream(out)).interpret(statements);
+    return out + diagnostics.all().toString();
+  }
+}
@@ -0,0 +1,34 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class IncrementalParserTest {
+  private static final String BEFORE = Benchmark.arithmeticProgram(2_000);
+
+  @Test
+  void reparsesOnlyAnEditedDeclaration() {
+    check(BEFORE.replace("var a1000 = 1000;", "var a1000 = 12345;"));
+  }
+
+  @Test
+  void shiftsTheLinesAfterAnAddedLine() {
+    check(BEFORE.replace("var a1000 = 1000;", "var a1000 = 1000;\nvar extra = a1000;"));
+  }
+
+  private static void check(String after) {
+    IncrementalParser parser = new IncrementalParser();
+    parser.update(BEFORE, new Diagnostics());
+    List<Stmt> updated = parser.update(after, new Diagnostics());
+    List<Stmt> full = Benchmark.parse(after);
+
+    assertEquals(full.size(), updated.size());
+    for (int i = 0; i < full.size(); i++) {
+      assertEquals(FirstToken.of(full.get(i)).line, FirstToken.of(updated.get(i)).line, "statement " + i);
+    }
+    assertEquals(1, parser.reparsed());
+  }
+}
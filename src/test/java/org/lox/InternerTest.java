@@ -0,0 +1,42 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class InternerTest {
+  @Test
+  void runsLikeThePlainTree() {
+    String source = Benchmark.repetitiveProgram(2_000);
+    List<Stmt> plain = Benchmark.parse(source);
+    Interner interner = new Interner();
+    List<Stmt> interned = interner.intern(Benchmark.parse(source));
+
+    assertEquals(plain.size(), interned.size());
+    assertTrue(interner.reused() > 0);
+    assertEquals(run(plain), run(interned));
+  }
+
+  @Test
+  void relocatesErrorsToTheStatementThatRan() {
+    Interner interner = new Interner();
+    Diagnostics diagnostics = new Diagnostics();
+    Interpreter interpreter = new Interpreter(diagnostics, new Environment(),
+        new PrintStream(new ByteArrayOutputStream()));
+    interpreter.setInterner(interner);
+    interpreter.interpret(interner.intern(Benchmark.parse("var a = 1;\na + 1;\na = \"s\";\na + 1;\n")), true);
+
+    assertEquals(4, diagnostics.all().get(0).line());
+  }
+
+  private static String run(List<Stmt> statements) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Interpreter(new Diagnostics(), new Environment(), new PrintStream(out, true)).interpret(statements, true);
+    return out.toString();
+  }
+}
@@ -0,0 +1,42 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// NumberFormatter against the old Double.toString() based stringify.
+class NumberFormatterTest {
+  @Test
+  void formatsSpecialValuesLikeStringify() {
+    double[] special = {
+      0.0, -0.0, 1.0, -1.0, 1023, 1024, 9_999_999, 1e7, -1e7, 1e7 - 0.5,
+      0.001, 0.000999, 1e21, 1e22, Double.MIN_VALUE, Double.MAX_VALUE,
+      Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+    for (double value : special) {
+      assertEquals(Benchmark.legacyStringify(value), NumberFormatter.format(value));
+    }
+  }
+
+  @Test
+  void formatsRandomValuesLikeStringify() {
+    Random random = new Random(42);
+    for (int i = 0; i < 3_000_000; i++) {
+      double value;
+      switch (i % 4) {
+        case 0: value = Double.longBitsToDouble(random.nextLong()); break;
+        case 1: value = random.nextInt(); break;
+        case 2: value = random.nextInt(20_000) - 10_000; break;
+        default: value = (random.nextInt(2_000_000) - 1_000_000) / 8.0; break;
+      }
+      String expected = Benchmark.legacyStringify(value);
+      String actual = NumberFormatter.format(value);
+      // Checked first; building the message for every value would cost
+      // more than the comparison.
+      if (!expected.equals(actual))
+        assertEquals(expected, actual, "value " + i);
+    }
+  }
+}
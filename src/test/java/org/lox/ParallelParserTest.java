@@ -0,0 +1,26 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelParserTest {
+  @Test
+  void parsesLikeTheSequentialParser() {
+    // Enough tokens to be split into runs.
+    List<Token> tokens = new Scanner(Benchmark.arithmeticProgram(20_000), new Diagnostics()).scanTokens();
+    List<Stmt> sequential = new Parser(tokens, new Diagnostics()).parse();
+    List<Stmt> parallel = ParallelParser.parse(tokens, new Diagnostics());
+
+    assertEquals(sequential.size(), parallel.size());
+    assertEquals(print(sequential), print(parallel));
+  }
+
+  private static String print(List<Stmt> statements) {
+    StringBuilder printed = new StringBuilder();
+    new AstPrinter(printed).write(statements);
+    return printed.toString();
+  }
+}
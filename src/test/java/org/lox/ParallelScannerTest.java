@@ -0,0 +1,31 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelScannerTest {
+  @Test
+  void scansLikeTheSequentialScanner() {
+    // Large enough to be split into chunks.
+    String source = Benchmark.scanProgram(20_000);
+    Diagnostics sequentialDiagnostics = new Diagnostics();
+    Diagnostics parallelDiagnostics = new Diagnostics();
+    List<Token> sequential = new Scanner(source, sequentialDiagnostics).scanTokens();
+    List<Token> parallel = ParallelScanner.scanTokens(source, parallelDiagnostics);
+
+    assertEquals(describe(sequential), describe(parallel));
+    assertEquals(sequentialDiagnostics.all(), parallelDiagnostics.all());
+  }
+
+  private static List<String> describe(List<Token> tokens) {
+    List<String> described = new ArrayList<>();
+    for (Token token : tokens) {
+      described.add(token + " " + token.line);
+    }
+    return described;
+  }
+}
@@ -0,0 +1,27 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks on timings, which need a quiet machine and several minutes, so
+ * they only run with `mvn -Pperformance test`.
+ */
+@Tag("performance")
+class PerformanceTest {
+  @Test
+  void everyPhaseScalesLinearly() {
+    assertTrue(Scaling.withinBound(Scaling.BOUND, Scaling.STEPS, Scaling.FACTOR));
+  }
+
+  @Test
+  void tracingCostsLittle() {
+    long[] fastest = Benchmark.traceTimes();
+    // Recording costs 3-5% here, on statements that do little more than a
+    // few arithmetic operators; the rest of the margin is for the noise.
+    assertTrue(fastest[1] < fastest[0] * 1.08,
+        "untraced " + fastest[0] + " ns, traced " + fastest[1] + " ns");
+  }
+}
@@ -0,0 +1,70 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultCacheTest {
+  private static final String SOURCE = Benchmark.arithmeticProgram(200);
+  private static final ResultCache.Result RESULT =
+      new ResultCache.Result("output\n".getBytes(StandardCharsets.UTF_8), new byte[0], 0);
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void replaysAResultFromDisk() throws IOException {
+    String key = ResultCache.key(SOURCE, "");
+    new ResultCache(directory).put(key, RESULT);
+    ResultCache.Result replayed = new ResultCache(directory).get(key);
+
+    assertNotNull(replayed);
+    assertArrayEquals(RESULT.out(), replayed.out());
+  }
+
+  @Test
+  void evictsTheLeastRecentlyUsedFirst() throws IOException {
+    // Room for three results; the first two of five are evicted.
+    ResultCache bounded = new ResultCache(directory, 0, 3 * RESULT.size());
+    for (int i = 0; i < 5; i++) {
+      bounded.put(ResultCache.key(SOURCE, "run " + i), RESULT);
+    }
+    ResultCache reopened = new ResultCache(directory, 0, 3 * RESULT.size());
+
+    assertNull(reopened.get(ResultCache.key(SOURCE, "run 1")));
+    assertNotNull(reopened.get(ResultCache.key(SOURCE, "run 2")));
+    assertNotNull(reopened.get(ResultCache.key(SOURCE, "run 4")));
+  }
+
+  @Test
+  void doesNotCacheARunStoppedByItsBudget() {
+    Diagnostics stopped = new Diagnostics();
+    Interpreter limited = new Interpreter(stopped, new Environment(), new PrintStream(new ByteArrayOutputStream()));
+    limited.setBudget(Budget.UNLIMITED.withMaxSteps(100));
+    limited.interpret(Benchmark.parse(SOURCE), true);
+
+    assertTrue(stopped.exceededBudget());
+    assertFalse(ResultCache.cacheable(stopped));
+  }
+
+  @Test
+  void cachesARunThatEndedInAnError() {
+    Diagnostics finished = new Diagnostics();
+    new Interpreter(finished, new Environment(), new PrintStream(new ByteArrayOutputStream()))
+        .interpret(Benchmark.parse("print 1; print nil + 1;"), true);
+
+    assertTrue(finished.hadRuntimeError());
+    assertTrue(ResultCache.cacheable(finished));
+  }
+}
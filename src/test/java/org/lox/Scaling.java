@@ -0,0 +1,212 @@
+package org.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Checks that scanning, parsing, interpreting and printing grow no faster
+ * than linearly. Each size of a Workload is grown on its own over
+ * geometric steps, every phase is timed at every step, and the exponent k
+ * of time ~ size^k is fitted by least squares over log time against log
+ * size. `mvn -Pperformance test` runs it with the defaults and fails if a
+ * phase grows faster than the bound, so a hidden quadratic cost fails the
+ * build instead of only showing up in production. To try other settings,
+ * run it on its own after `mvn test-compile`:
+ *
+ *   java -Xms1g -Xmn512m -cp target/classes:target/test-classes org.lox.Scaling
+ *
+ * which exits with 1 if a phase is above the bound.
+ * The fixed, roomy heap keeps the collector from having to grow it between
+ * steps; with a small default heap the largest steps spend longer in GC.
+ *
+ * Caches and the garbage collector make a linear phase jump by a constant
+ * factor once its data outgrows them, which raises the exponent fitted
+ * over the steps around the jump. The exponent is therefore fitted over
+ * all steps and over the largest half of them, and a phase only fails if
+ * both are above the bound: a jump raises one of the two, while a
+ * quadratic cost raises both to about 2.
+ */
+public class Scaling {
+  // Each step is timed until this much time has passed, keeping the
+  // fastest run, so short steps are not lost in timer and GC noise.
+  private static final long MIN_NANOS = 50_000_000;
+  private static final int MIN_RUNS = 3;
+
+  static final double BOUND = 1.5;
+  static final int STEPS = 6;
+  static final int FACTOR = 2;
+
+  enum Phase {
+    SCAN,
+    PARSE,
+    INTERPRET,
+    PRINT
+  }
+
+  enum Dimension {
+    STATEMENTS,
+    DEPTH,
+    VARIABLES,
+    STRING_LENGTH;
+
+    int base() {
+      switch (this) {
+        case STATEMENTS:
+          return Workload.BASE.statements;
+        case DEPTH:
+          return Workload.BASE.depth;
+        case VARIABLES:
+          return Workload.BASE.variables;
+        default:
+          return Workload.BASE.stringLength;
+      }
+    }
+
+    Workload workload(int size) {
+      switch (this) {
+        case STATEMENTS:
+          return Workload.BASE.withStatements(size);
+        case DEPTH:
+          return Workload.BASE.withDepth(size);
+        case VARIABLES:
+          return Workload.BASE.withVariables(size);
+        default:
+          return Workload.BASE.withStringLength(size);
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    double bound = BOUND;
+    int steps = STEPS;
+    int factor = FACTOR;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--bound") && i + 1 < args.length) {
+          bound = Double.parseDouble(args[++i]);
+        } else if (args[i].equals("--steps") && i + 1 < args.length) {
+          steps = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("--factor") && i + 1 < args.length) {
+          factor = Integer.parseInt(args[++i]);
+        } else {
+          usage();
+        }
+      }
+    } catch (NumberFormatException e) {
+      usage();
+    }
+    // The largest half needs two steps of its own.
+    if (steps < 4 || factor < 2) usage();
+    if (!withinBound(bound, steps, factor)) System.exit(1);
+  }
+
+  /**
+   * Prints the exponents fitted for every dimension and phase, and returns
+   * whether all of them are within bound.
+   */
+  static boolean withinBound(double bound, int steps, int factor) {
+    // Every phase over the largest step of every dimension first, so the
+    // JIT is done compiling, which on few cores competes with the timed
+    // runs, before anything is timed.
+    long[][] discard = new long[Phase.values().length][1];
+    for (int round = 0; round < 2; round++) {
+      for (Dimension dimension : Dimension.values()) {
+        time(dimension.workload(dimension.base() * (int) Math.pow(factor, steps - 1)), discard, 0);
+      }
+    }
+
+    boolean failed = false;
+    System.out.printf("%-14s %-10s %8s %8s   ms per step%n", "dimension", "phase", "exponent", "largest");
+    for (Dimension dimension : Dimension.values()) {
+      int[] sizes = new int[steps];
+      sizes[0] = dimension.base();
+      for (int step = 1; step < steps; step++) {
+        sizes[step] = sizes[step - 1] * factor;
+      }
+
+      long[][] nanos = new long[Phase.values().length][steps];
+      for (int step = 0; step < steps; step++) {
+        time(dimension.workload(sizes[step]), nanos, step);
+      }
+
+      for (Phase phase : Phase.values()) {
+        double exponent = exponent(sizes, nanos[phase.ordinal()], 0);
+        double largest = exponent(sizes, nanos[phase.ordinal()], steps / 2);
+        StringBuilder line = new StringBuilder(String.format("%-14s %-10s %8.2f %8.2f  ",
+            dimension.name().toLowerCase(), phase.name().toLowerCase(), exponent, largest));
+        for (long time : nanos[phase.ordinal()]) {
+          line.append(String.format(" %8.3f", time / 1e6));
+        }
+        if (Math.min(exponent, largest) > bound) {
+          line.append("   above ").append(bound);
+          failed = true;
+        }
+        System.out.println(line);
+      }
+    }
+    return !failed;
+  }
+
+  private static void usage() {
+    System.out.println("Usage: scaling [--bound <exponent>] [--steps <count>] [--factor <growth per step>]");
+    System.exit(64);
+  }
+
+  // Times every phase over workload into nanos[phase][step].
+  private static void time(Workload workload, long[][] nanos, int step) {
+    String source = workload.source();
+    // Scanning first, while nothing else is kept alive.
+    nanos[Phase.SCAN.ordinal()][step] = time(() -> new Scanner(source, new Diagnostics()).scanTokens());
+    List<Token> tokens = new Scanner(source, new Diagnostics()).scanTokens();
+    Diagnostics diagnostics = new Diagnostics();
+    List<Stmt> statements = new Parser(tokens, diagnostics).parse();
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    new Interpreter(diagnostics, new Environment(), discard).interpret(statements);
+    if (diagnostics.hadError() || diagnostics.hadRuntimeError())
+      throw new IllegalStateException("Workload " + workload + " does not run cleanly.");
+
+    nanos[Phase.PARSE.ordinal()][step] = time(() -> new Parser(tokens, new Diagnostics()).parse());
+    nanos[Phase.INTERPRET.ordinal()][step] = time(() ->
+        new Interpreter(new Diagnostics(), new Environment(), discard).interpret(statements));
+    nanos[Phase.PRINT.ordinal()][step] = time(() -> new AstPrinter(new StringBuilder()).write(statements));
+  }
+
+  // Nanoseconds taken by the fastest of the runs.
+  private static long time(Runnable body) {
+    // Garbage left by an earlier step is not this one's to collect.
+    System.gc();
+    long fastest = Long.MAX_VALUE;
+    long start = System.nanoTime();
+    for (int runs = 0; runs < MIN_RUNS || System.nanoTime() - start < MIN_NANOS; runs++) {
+      long begin = System.nanoTime();
+      body.run();
+      fastest = Math.min(fastest, System.nanoTime() - begin);
+    }
+    return fastest;
+  }
+
+  /**
+   * Slope of the least squares line through (log size, log time) for the
+   * steps from first on.
+   */
+  static double exponent(int[] sizes, long[] nanos, int first) {
+    int n = sizes.length - first;
+    double sumX = 0;
+    double sumY = 0;
+    for (int i = first; i < sizes.length; i++) {
+      sumX += Math.log(sizes[i]);
+      sumY += Math.log(nanos[i]);
+    }
+    double meanX = sumX / n;
+    double meanY = sumY / n;
+    double covariance = 0;
+    double variance = 0;
+    for (int i = first; i < sizes.length; i++) {
+      double x = Math.log(sizes[i]) - meanX;
+      covariance += x * (Math.log(nanos[i]) - meanY);
+      variance += x * x;
+    }
+    return covariance / variance;
+  }
+}
@@ -0,0 +1,34 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void restoresTheGlobalsItWrote() throws IOException {
+    Interpreter interpreter = new Interpreter(new Diagnostics());
+    interpreter.interpret(Benchmark.parse(Benchmark.prelude(10_000)));
+    Environment globals = interpreter.snapshotGlobals();
+    Path file = directory.resolve("prelude.snap");
+    Snapshot.write(globals, file);
+
+    Map<Integer, Object> expected = new HashMap<>();
+    globals.forEach(expected::put);
+    Map<Integer, Object> restored = new HashMap<>();
+    Snapshot.read(file).forEach(restored::put);
+
+    // Numbers, every fourth a string and every sixteenth a bool.
+    assertEquals(10_000 + 2_500 + 625, expected.size());
+    assertEquals(expected, restored);
+  }
+}
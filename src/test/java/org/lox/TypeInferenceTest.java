@@ -0,0 +1,40 @@
+package org.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TypeInferenceTest {
+  @Test
+  void skippedChecksDoNotChangeOutput() {
+    String source = Benchmark.arithmeticProgram(2_000) + Benchmark.repetitiveProgram(500);
+    List<Stmt> inferred = Benchmark.parse(source);
+    Diagnostics warnings = new Diagnostics();
+    TypeInference.infer(inferred, warnings);
+
+    assertTrue(warnings.all().isEmpty());
+    assertEquals(run(Benchmark.parse(source)), run(inferred));
+  }
+
+  @Test
+  void aCertainTypeErrorIsOnlyAWarning() {
+    Diagnostics diagnostics = new Diagnostics();
+    TypeInference.infer(Benchmark.parse("var s = \"a\"; print s - 1;"), diagnostics);
+
+    assertEquals(1, diagnostics.all().size());
+    assertEquals(Diagnostics.Kind.WARNING, diagnostics.all().get(0).kind());
+    assertFalse(diagnostics.hadError());
+  }
+
+  private static String run(List<Stmt> statements) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Interpreter(new Diagnostics(), new Environment(), new PrintStream(out)).interpret(statements);
+    return out.toString();
+  }
+}
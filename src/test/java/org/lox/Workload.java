@@ -0,0 +1,79 @@
+package org.lox;
+
+/**
+ * A synthetic Lox program with four sizes that can be grown one at a time,
+ * for Scaling. Starting from BASE, use the with* methods to change them.
+ *
+ * The program declares `variables` numbers and strings of `stringLength`
+ * characters, then runs `statements` units, each nested `depth` blocks deep
+ * around an expression nested `depth` parentheses deep. A unit reads and
+ * assigns globals from the innermost block and concatenates two of the
+ * strings into a local, so it does work proportional to every size once.
+ * Nothing is printed.
+ */
+final class Workload {
+  static final Workload BASE = new Workload(500, 4, 250, 16);
+
+  final int statements;
+  final int depth;
+  final int variables;
+  final int stringLength;
+
+  private Workload(int statements, int depth, int variables, int stringLength) {
+    this.statements = statements;
+    this.depth = depth;
+    this.variables = variables;
+    this.stringLength = stringLength;
+  }
+
+  // Number of units run after the declarations.
+  Workload withStatements(int statements) {
+    return new Workload(statements, depth, variables, stringLength);
+  }
+
+  // Blocks around each unit, and parentheses around its expression.
+  Workload withDepth(int depth) {
+    return new Workload(statements, depth, variables, stringLength);
+  }
+
+  // Number of global numbers, and of global strings, declared.
+  Workload withVariables(int variables) {
+    return new Workload(statements, depth, variables, stringLength);
+  }
+
+  // Characters in each global string.
+  Workload withStringLength(int stringLength) {
+    return new Workload(statements, depth, variables, stringLength);
+  }
+
+  String source() {
+    StringBuilder source = new StringBuilder();
+    StringBuilder text = new StringBuilder(stringLength);
+    for (int i = 0; i < stringLength; i++) {
+      text.append((char) ('a' + i % 26));
+    }
+    for (int i = 0; i < variables; i++) {
+      source.append("var v").append(i).append(" = ").append(i).append(";\n");
+      source.append("var s").append(i).append(" = \"").append(text).append("\";\n");
+    }
+
+    for (int i = 0; i < statements; i++) {
+      int a = i % variables;
+      int b = (i * 7 + 3) % variables;
+      source.append("{ ".repeat(depth));
+      source.append("var t = ").append("(".repeat(depth)).append('v').append(a);
+      source.append(" + 1)".repeat(depth)).append(" * v").append(b).append("; ");
+      // Keeps the numbers finite however long the program runs.
+      source.append('v').append(a).append(" = t > 1000000 ? ").append(a).append(" : t; ");
+      source.append("var u = s").append(a).append(" + s").append(b).append(';');
+      source.append(" }".repeat(depth)).append('\n');
+    }
+    return source.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "statements=" + statements + " depth=" + depth + " variables=" + variables
+        + " stringLength=" + stringLength;
+  }
+}